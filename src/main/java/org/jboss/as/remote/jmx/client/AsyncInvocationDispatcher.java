@@ -0,0 +1,160 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.client;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+
+import org.jboss.as.remote.jmx.common.Invocation;
+import org.jboss.as.remote.jmx.common.InvocationResult;
+
+/**
+ * Sends the asynchronous invocations of a {@link Client} to the server.
+ * <p/>
+ * Invocations are put on a bounded queue which is drained by a fixed number of worker threads. Each worker sends
+ * the invocations which have queued up while it was busy in one batch, so the number of invocations in flight
+ * is not limited by the number of threads. Since the server runs the invocations of a batch one after the other,
+ * a worker only takes its share of the queued invocations, up to {@link #MAX_BATCH_SIZE}, leaving the rest to
+ * the other workers so that independent invocations still run concurrently.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+final class AsyncInvocationDispatcher {
+    private static final int MAX_BATCH_SIZE = 32;
+
+    private final Client client;
+    private final BlockingQueue<InvocationFuture<?>> queue;
+    private final Thread[] workers;
+    private final ScheduledExecutorService timer;
+    private volatile boolean closed;
+
+    AsyncInvocationDispatcher(Client client, int threads, int queueCapacity) {
+        this.client = client;
+        this.queue = new ArrayBlockingQueue<InvocationFuture<?>>(queueCapacity);
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "RemoteViaJMX client async timeouts");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.workers = new Thread[threads];
+        for (int i = 0 ; i < threads ; i++) {
+            workers[i] = new Thread(new Worker(), "RemoteViaJMX client async invoker " + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queues an invocation
+     *
+     * @param invocation the invocation
+     * @param timeout the time in milliseconds after which the invocation fails with a {@link TimeoutException}, or {@code <= 0} to wait forever
+     * @return the future for the result
+     */
+    <V> InvocationFuture<V> submit(Invocation invocation, long timeout) {
+        InvocationFuture<V> future = new InvocationFuture<V>(invocation);
+        if (closed) {
+            future.fail(new RejectedExecutionException("Client is closed"));
+            return future;
+        }
+        if (!queue.offer(future)) {
+            future.fail(new RejectedExecutionException("Too many asynchronous invocations are pending"));
+            return future;
+        }
+        if (timeout > 0) {
+            future.scheduleTimeout(timer, timeout);
+        }
+        return future;
+    }
+
+    void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        timer.shutdownNow();
+        List<InvocationFuture<?>> pending = new ArrayList<InvocationFuture<?>>();
+        queue.drainTo(pending);
+        for (InvocationFuture<?> future : pending) {
+            future.fail(new RejectedExecutionException("Client is closed"));
+        }
+    }
+
+    private class Worker implements Runnable {
+        public void run() {
+            final List<InvocationFuture<?>> batch = new ArrayList<InvocationFuture<?>>();
+            while (!closed) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                //Take our share of what is queued up, the other workers send the rest in parallel
+                queue.drainTo(batch, Math.min(MAX_BATCH_SIZE, 1 + queue.size() / workers.length) - 1);
+                for (Iterator<InvocationFuture<?>> it = batch.iterator() ; it.hasNext() ; ) {
+                    //Skip the ones which were cancelled or timed out while queued
+                    if (it.next().isDone()) {
+                        it.remove();
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    send(batch);
+                }
+                batch.clear();
+            }
+        }
+
+        private void send(List<InvocationFuture<?>> batch) {
+            Invocation[] invocations = new Invocation[batch.size()];
+            for (int i = 0 ; i < invocations.length ; i++) {
+                invocations[i] = batch.get(i).getInvocation();
+            }
+            InvocationResult[] results;
+            try {
+                results = client.invokeBatch(invocations);
+            } catch (Throwable t) {
+                for (InvocationFuture<?> future : batch) {
+                    future.fail(t);
+                }
+                return;
+            }
+            for (int i = 0 ; i < results.length ; i++) {
+                if (results[i].isFailure()) {
+                    batch.get(i).fail(results[i].getFailure());
+                } else {
+                    batch.get(i).complete(results[i].getValue());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.client;
+
+import java.lang.reflect.Method;
+
+/**
+ * Invokes methods on a bean proxy asynchronously. Obtained via {@link Client#lookupAsync(Class, String)}.
+ * <pre>
+ * AsyncInvoker&lt;TestStateless&gt; invoker = client.lookupAsync(TestStateless.class, "java:global/test/test-ejb/TestStatelessBean");
+ * InvocationFuture&lt;Integer&gt; future = invoker.invoke("test", new Class[] {Boolean.TYPE}, true);
+ * int i = future.get(5, TimeUnit.SECONDS);
+ * </pre>
+ *
+ * @param <T> the bean interface
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class AsyncInvoker<T> {
+    private final AsyncInvocationDispatcher dispatcher;
+    private final Class<T> type;
+    private final T proxy;
+    private final ClientBeanHandler handler;
+    private final long timeout;
+
+    AsyncInvoker(AsyncInvocationDispatcher dispatcher, Class<T> type, T proxy, ClientBeanHandler handler, long timeout) {
+        this.dispatcher = dispatcher;
+        this.type = type;
+        this.proxy = proxy;
+        this.handler = handler;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Get the proxy, for making synchronous invocations on the same bean
+     *
+     * @return the proxy
+     */
+    public T getProxy() {
+        return proxy;
+    }
+
+    /**
+     * Invokes a method asynchronously
+     *
+     * @param method a method of the bean interface
+     * @param args the arguments
+     * @return the future for the value returned by the method
+     */
+    public <R> InvocationFuture<R> invoke(Method method, Object...args) {
+        if (!method.getDeclaringClass().isAssignableFrom(type)) {
+            throw new IllegalArgumentException(method + " is not a method of " + type.getName());
+        }
+        return dispatcher.<R>submit(handler.createInvocation(method, args == null || args.length == 0 ? null : args), timeout);
+    }
+
+    /**
+     * Invokes a method asynchronously
+     *
+     * @param methodName the name of a method of the bean interface
+     * @param paramTypes the parameter types of the method
+     * @param args the arguments
+     * @return the future for the value returned by the method
+     */
+    public <R> InvocationFuture<R> invoke(String methodName, Class<?>[] paramTypes, Object...args) {
+        Method method;
+        try {
+            method = type.getMethod(methodName, paramTypes);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("No method called " + methodName + " found on " + type.getName(), e);
+        }
+        return invoke(method, args);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.client;
+
+import org.jboss.as.remote.jmx.common.InvocationResult;
+
+/**
+ * The results of executing an {@link InvocationBatch}
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class BatchResults {
+    private final InvocationResult[] results;
+
+    BatchResults(InvocationResult[] results) {
+        this.results = results;
+    }
+
+    /**
+     * Get the number of results
+     *
+     * @return the number of results
+     */
+    public int size() {
+        return results.length;
+    }
+
+    /**
+     * Get the value returned by an invocation
+     *
+     * @param index the index returned when adding the invocation to the batch
+     * @return the returned value
+     * @throws Exception the exception thrown by the invocation
+     */
+    public Object get(int index) throws Exception {
+        InvocationResult result = results[index];
+        if (result.isFailure()) {
+            Throwable t = result.getFailure();
+            if (t instanceof Exception) {
+                throw (Exception)t;
+            }
+            if (t instanceof Error) {
+                throw (Error)t;
+            }
+            throw new RuntimeException(t);
+        }
+        return result.getValue();
+    }
+
+    /**
+     * Whether an invocation failed
+     *
+     * @param index the index returned when adding the invocation to the batch
+     * @return {@code true} if the invocation threw an exception
+     */
+    public boolean isFailure(int index) {
+        return results[index].isFailure();
+    }
+
+    /**
+     * Get the exception thrown by an invocation
+     *
+     * @param index the index returned when adding the invocation to the batch
+     * @return the exception, or {@code null} if the invocation succeeded
+     */
+    public Throwable getFailure(int index) {
+        return results[index].getFailure();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+* JBoss, Home of Professional Open Source.
+* Copyright 2006, Red Hat Middleware LLC, and individual contributors
+* as indicated by the @author tags. See the copyright.txt file in the
+* distribution for a full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.as.remote.jmx.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.jboss.as.remote.jmx.common.ResultChunk;
+
+/**
+ * An {@link InputStream} reading a streamed binary result from the server, fetching the next chunk once the
+ * current one has been read
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+class ChunkedInputStream extends InputStream {
+    private final Client client;
+    private ResultChunk chunk;
+    private int position;
+    private boolean closed;
+
+    ChunkedInputStream(Client client, ResultChunk first) {
+        this.client = client;
+        this.chunk = first;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return chunk.getBytes()[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int read = Math.min(len, chunk.getBytes().length - position);
+        System.arraycopy(chunk.getBytes(), position, b, off, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return closed ? 0 : chunk.getBytes().length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (!chunk.isLast()) {
+                client.closeResultCursor(chunk.getCursorId());
+            }
+        }
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (position == chunk.getBytes().length) {
+            if (chunk.isLast()) {
+                return false;
+            }
+            try {
+                chunk = client.nextResultChunk(chunk.getCursorId());
+            } catch (RuntimeException e) {
+                throw new IOException("Could not read the next chunk of the result", e);
+            }
+            position = 0;
+        }
+        return true;
+    }
+}
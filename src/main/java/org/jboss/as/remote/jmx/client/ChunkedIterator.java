@@ -0,0 +1,70 @@
+/*
+* JBoss, Home of Professional Open Source.
+* Copyright 2006, Red Hat Middleware LLC, and individual contributors
+* as indicated by the @author tags. See the copyright.txt file in the
+* distribution for a full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.as.remote.jmx.client;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.jboss.as.remote.jmx.common.ResultChunk;
+
+/**
+ * An {@link Iterator} over a streamed result from the server, fetching the next chunk once the
+ * current one has been iterated. Abandoned iterators are discarded by the server once idle for long enough
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+class ChunkedIterator implements Iterator<Object> {
+    private final Client client;
+    private ResultChunk chunk;
+    private int position;
+
+    ChunkedIterator(Client client, ResultChunk first) {
+        this.client = client;
+        this.chunk = first;
+    }
+
+    public boolean hasNext() {
+        while (position == chunk.getElements().length) {
+            if (chunk.isLast()) {
+                return false;
+            }
+            chunk = client.nextResultChunk(chunk.getCursorId());
+            position = 0;
+        }
+        return true;
+    }
+
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object element = chunk.getElements()[position];
+        //Let go of the elements already returned
+        chunk.getElements()[position++] = null;
+        return element;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -21,16 +21,49 @@
 */
 package org.jboss.as.remote.jmx.client;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import javax.management.MBeanServerConnection;
+import javax.management.AttributeNotFoundException;
+import javax.management.InstanceNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
-import javax.management.remote.JMXConnector;
-import javax.management.remote.JMXConnectorFactory;
-import javax.management.remote.JMXServiceURL;
 import javax.naming.NamingException;
 
+import org.jboss.as.remote.jmx.common.Invocation;
+import org.jboss.as.remote.jmx.common.InvocationResult;
+import org.jboss.as.remote.jmx.common.ResultChunk;
+import org.jboss.as.remote.jmx.common.ServerNotifications;
+import org.jboss.as.remote.jmx.common.SessionOwnerFilter;
+import org.jboss.as.remote.jmx.common.StaleIdException;
 import org.jboss.as.remote.jmx.mbean.RemoteViaJMX;
 
 /**
@@ -42,21 +75,74 @@ import org.jboss.as.remote.jmx.mbean.RemoteViaJMX;
  */
 public class Client {
 
-    private static final String DEFAULT_HOST = "localhost";
-    private static final int DEFAULT_PORT = 1090;
-    private static final String[] LOOKUP_SIG = new String[] {String.class.getName(), String.class.getName()};
+    static final String DEFAULT_HOST = "localhost";
+    static final int DEFAULT_PORT = 1090;
+    private static final String[] LOOKUP_SIG = new String[] {String.class.getName(), String.class.getName(), Long.TYPE.getName()};
+    private static final String[] INVOKE_SIG = new String[] {Invocation.class.getName()};
+    private static final String[] INVOKE_BATCH_SIG = new String[] {Invocation[].class.getName()};
+    private static final String[] CURSOR_SIG = new String[] {Long.TYPE.getName()};
+    private static final int DEFAULT_ASYNC_THREADS = 4;
+    private static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 10000;
+    private static final int MAX_REMEMBERED_REMOVED_SESSIONS = 10000;
+    private static final long DEFAULT_HEARTBEAT_INTERVAL = 10000;
+    private static final long MAX_RECONNECT_BACKOFF = 60000;
+    private static final int HEARTBEAT_THREADS = 2;
+    /** Shared by all clients, so each heartbeat is bounded by the connect timeout and a second thread covers for a slow one */
+    private static final ScheduledExecutorService HEARTBEATS = Executors.newScheduledThreadPool(HEARTBEAT_THREADS, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "RemoteViaJMX client heartbeat");
+            t.setDaemon(true);
+            return t;
+        }
+    });
 
     private final ClientFactory factory;
+    private final ClientFactory.Key key;
+    /** The number of users, or {@code -1} once the last one has removed it */
+    private final AtomicInteger users = new AtomicInteger();
     private final ObjectName appMBeanName;
     private final String host;
     private final int port;
-    private volatile JMXConnector jmxConnector;
+    private final ConnectorPool pool;
+    /** Identifies us to the server, so that we are only told about the removal of our own stateful sessions */
+    private final long clientId = newClientId();
+    private volatile int asyncThreads = DEFAULT_ASYNC_THREADS;
+    private volatile int asyncQueueCapacity = DEFAULT_ASYNC_QUEUE_CAPACITY;
+    private volatile long asyncTimeout;
+    private AsyncInvocationDispatcher asyncDispatcher;
+    private final NotificationListener serverListener = new ServerListener();
+    private final List<NotificationListener> listeners = new CopyOnWriteArrayList<NotificationListener>();
+    private volatile ConnectorPool.PooledConnector subscription;
+    private final AtomicLong version = new AtomicLong();
+    private final ConcurrentMap<String, Long> nameVersions = new ConcurrentHashMap<String, Long>();
+    private final ConcurrentMap<Method, MethodDescriptor> descriptors = new ConcurrentHashMap<Method, MethodDescriptor>();
+    private final ConcurrentMap<String, MethodIds> methodIds = new ConcurrentHashMap<String, MethodIds>();
+    private volatile long stopVersion;
+    private final List<ConnectionListener> connectionListeners = new CopyOnWriteArrayList<ConnectionListener>();
+    private volatile long heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+    private volatile ScheduledFuture<?> heartbeat;
+    private final Object heartbeatLock = new Object();
+    private final AtomicBoolean instanceCheckPending = new AtomicBoolean();
+    private volatile boolean connected = true;
+    private volatile Object instanceId;
+    private int heartbeatFailures;
+    private long nextHeartbeat;
+    private final Map<Long, Boolean> removedSessions = new LinkedHashMap<Long, Boolean>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > MAX_REMEMBERED_REMOVED_SESSIONS;
+        }
+    };
 
-    Client(ClientFactory factory, ObjectName appMBeanName, String host, int port) {
+    Client(ClientFactory factory, ClientFactory.Key key, ObjectName appMBeanName, String host, int port) {
         this.factory = factory;
+        this.key = key;
         this.appMBeanName = appMBeanName;
         this.host = host == null ? DEFAULT_HOST : host;
         this.port = port <= 0 ? DEFAULT_PORT : port;
+        this.pool = new ConnectorPool(this.host, this.port);
     }
 
     /**
@@ -70,7 +156,7 @@ public class Client {
         Object val;
         try {
             String className = clazz.getName();
-            val = getConnection().invoke(appMBeanName, "lookup", new Object[] {className, name}, LOOKUP_SIG);
+            val = invokeOperation("lookup", new Object[] {className, name, clientId}, LOOKUP_SIG);
         } catch (Exception e) {
             if (e.getCause() != null) {
                 if (e.getCause() instanceof NamingException) {
@@ -91,39 +177,660 @@ public class Client {
             return clazz.cast(val);
         }
         handler.setClient(this);
+        if (instanceId == null && handler.getInstanceId() != 0) {
+            //So that a restart can be detected before the first heartbeat
+            instanceId = handler.getInstanceId();
+        }
         return (T)Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class[] {clazz}, handler);
     }
 
     /**
-     * Once done with this client instance, removes it
+     * Looks up an EJB in JNDI on the server, returning an invoker which can be used to make asynchronous
+     * invocations on it.
+     *
+     * @param clazz the bean interface
+     * @param name the name we are looking up
+     * @return the invoker
+     * @throws IllegalArgumentException if the name is not that of a stateless or stateful session bean
+     */
+    public <T> AsyncInvoker<T> lookupAsync(Class<T> clazz, String name) throws NamingException {
+        T proxy = lookup(clazz, name);
+        InvocationHandler handler = Proxy.isProxyClass(proxy.getClass()) ? Proxy.getInvocationHandler(proxy) : null;
+        if (handler instanceof ClientBeanHandler == false) {
+            throw new IllegalArgumentException(name + " is not a stateless or stateful session bean");
+        }
+        return new AsyncInvoker<T>(getAsyncDispatcher(), clazz, proxy, (ClientBeanHandler)handler, asyncTimeout);
+    }
+
+    /**
+     * Sets the number of threads used to send asynchronous invocations to the server. Each thread sends all the
+     * invocations queued up while it was busy in one call, so this does not limit the number of invocations in flight.
+     * Only takes effect if called before the first call to {@link #lookupAsync(Class, String)}
+     *
+     * @param threads the number of threads, defaults to {@code 4}
+     */
+    public void setAsyncThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+        this.asyncThreads = threads;
+    }
+
+    /**
+     * Sets the maximum number of asynchronous invocations waiting to be sent. Further invocations fail immediately
+     * with a {@link java.util.concurrent.RejectedExecutionException}.
+     * Only takes effect if called before the first call to {@link #lookupAsync(Class, String)}
+     *
+     * @param capacity the capacity, defaults to {@code 10000}
+     */
+    public void setAsyncQueueCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.asyncQueueCapacity = capacity;
+    }
+
+    /**
+     * Sets the time after which asynchronous invocations fail with a {@link java.util.concurrent.TimeoutException}.
+     * Applies to invokers obtained after it is set
+     *
+     * @param timeout the timeout in milliseconds, {@code <= 0}, the default, means no timeout
+     */
+    public void setAsyncTimeout(long timeout) {
+        this.asyncTimeout = timeout;
+    }
+
+    /**
+     * Sets the number of connectors to the server which are kept open even when idle
+     *
+     * @param min the minimum number of connectors, defaults to {@code 1}
+     */
+    public void setMinConnections(int min) {
+        if (min <= 0) {
+            throw new IllegalArgumentException("Need at least one connection");
+        }
+        pool.setMinConnectors(min);
+    }
+
+    /**
+     * Sets the maximum number of connectors to the server. Calls go to the connector with the fewest calls in
+     * flight, and another connector is opened when all of them are busy until there are this many
+     *
+     * @param max the maximum number of connectors, defaults to {@code 4}
+     */
+    public void setMaxConnections(int max) {
+        if (max <= 0) {
+            throw new IllegalArgumentException("Need at least one connection");
+        }
+        pool.setMaxConnectors(max);
+    }
+
+    /**
+     * Sets the time after which connectors beyond the minimum are closed if they have not been used
+     *
+     * @param maxIdleTime the time in milliseconds, defaults to {@code 60000}
+     */
+    public void setConnectionMaxIdleTime(long maxIdleTime) {
+        pool.setMaxIdleTime(maxIdleTime);
+    }
+
+    /**
+     * Gets the number of connectors currently open to the server
+     *
+     * @return the number of connectors
+     */
+    public int getConnectionCount() {
+        return pool.size();
+    }
+
+    /**
+     * Creates a batch which can be used to send several invocations on bean proxies obtained from this client
+     * to the server in one call
+     *
+     * @return the batch
+     */
+    public InvocationBatch createBatch() {
+        return new InvocationBatch(this);
+    }
+
+    /**
+     * Adds a listener for the {@link ServerNotifications} sent by the MBean, which can be used instead of polling
+     * it to find out about removed sessions, changed names and the MBean stopping. This client already invalidates
+     * what it has cached before the listeners are called
+     *
+     * @param listener the listener
+     */
+    public void addServerListener(NotificationListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addServerListener(NotificationListener)}
+     *
+     * @param listener the listener
+     */
+    public void removeServerListener(NotificationListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Sets the time to wait for a new connector to the server to connect, after which the call or heartbeat which
+     * needed it fails with an {@link IOException}
+     *
+     * @param timeout the timeout in milliseconds, defaults to {@code 10000}. {@code <= 0} means no timeout
+     */
+    public void setConnectTimeout(long timeout) {
+        pool.setConnectTimeout(timeout);
+    }
+
+    /**
+     * Sets the interval of the heartbeat which checks that the server can be reached, reconnecting with an
+     * increasing backoff when it cannot, and detects when the MBean was restarted. A heartbeat which is already
+     * running is rescheduled with the new interval
+     *
+     * @param interval the interval in milliseconds, defaults to {@code 10000}. {@code <= 0} disables the heartbeat
+     */
+    public void setHeartbeatInterval(long interval) {
+        synchronized (this) {
+            this.heartbeatInterval = interval;
+            if (heartbeat == null) {
+                return;
+            }
+            heartbeat.cancel(false);
+            heartbeat = null;
+        }
+        startHeartbeat();
+    }
+
+    /**
+     * Adds a listener notified by the heartbeat when the connection to the server is lost and restored
+     *
+     * @param listener the listener
+     */
+    public void addConnectionListener(ConnectionListener listener) {
+        connectionListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addConnectionListener(ConnectionListener)}
+     *
+     * @param listener the listener
+     */
+    public void removeConnectionListener(ConnectionListener listener) {
+        connectionListeners.remove(listener);
+    }
+
+    /**
+     * Whether the last heartbeat reached the server
+     *
+     * @return {@code true} if connected, or if there has not been a heartbeat yet
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Once done with this client instance, removes it. The connections are closed once everyone who got this
+     * client from the {@link ClientFactory} has removed it, so this must be called exactly once per get
      */
     public void remove() {
-        factory.closeClient(appMBeanName);
+        factory.release(this);
+    }
+
+    ClientFactory.Key getKey() {
+        return key;
+    }
+
+    /**
+     * Adds a user
+     *
+     * @return {@code false} if the last user has already removed it
+     */
+    boolean retain() {
+        while (true) {
+            int current = users.get();
+            if (current < 0) {
+                return false;
+            }
+            if (users.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes a user
+     *
+     * @return {@code true} if it was the last one, so the client should be closed
+     */
+    boolean release() {
+        int remaining = users.decrementAndGet();
+        if (remaining < 0) {
+            users.incrementAndGet();
+            throw new IllegalStateException("Client for " + key + " was removed more times than it was got");
+        }
+        return remaining == 0 && users.compareAndSet(0, -1);
     }
 
     void safeClose() {
-        try {
-            if (jmxConnector != null) {
-                jmxConnector.close();
+        synchronized (this) {
+            if (heartbeat != null) {
+                heartbeat.cancel(false);
+                heartbeat = null;
+            }
+            if (asyncDispatcher != null) {
+                asyncDispatcher.close();
+                asyncDispatcher = null;
             }
-        } catch (IOException ignore) {
         }
+        pool.close();
     }
 
-    MBeanServerConnection getConnection() {
-        String urlString = System.getProperty("jmx.service.url", "service:jmx:rmi:///jndi/rmi://" + host + ":" + port + "/jmxrmi");
+    /**
+     * Invokes an operation on the MBean using one of the pooled connectors
+     *
+     * @param operation the name of the operation
+     * @param params the parameters
+     * @param signature the parameter types
+     * @return the result
+     */
+    Object invokeOperation(String operation, Object[] params, String[] signature) throws Exception {
+        if (heartbeat == null && heartbeatInterval > 0) {
+            startHeartbeat();
+        }
+        ConnectorPool.PooledConnector connector;
         try {
-            if (jmxConnector == null) {
-                JMXServiceURL serviceURL = new JMXServiceURL(urlString);
-                jmxConnector = JMXConnectorFactory.connect(serviceURL, null);
+            ConnectorPool.PooledConnector primary = pool.getPrimary();
+            if (subscription != primary) {
+                subscribe(primary);
             }
-            return jmxConnector.getMBeanServerConnection();
+            connector = pool.acquire();
         } catch (IOException ex) {
-            throw new IllegalStateException("Cannot obtain MBeanServerConnection to: " + urlString, ex);
+            throw new IllegalStateException("Cannot obtain MBeanServerConnection to: " + pool.getServiceUrl(), ex);
+        }
+        try {
+            return connector.getConnection().invoke(appMBeanName, operation, params, signature);
+        } catch (IOException e) {
+            //The connection is broken, the next call opens a new one
+            pool.discard(connector);
+            throw e;
+        } finally {
+            pool.release(connector);
         }
     }
 
+    Object invoke(Invocation invocation) throws Exception {
+        return invokeOperation("invoke", new Object[] {invocation}, INVOKE_SIG);
+    }
+
+    InvocationResult[] invokeBatch(Invocation[] invocations) {
+        try {
+            InvocationResult[] results = (InvocationResult[])invokeOperation("invokeBatch", new Object[] {invocations}, INVOKE_BATCH_SIG);
+            resendStale(invocations, results);
+            return results;
+        } catch (Exception e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Resends the invocations which the server rejected with a {@link StaleIdException} by name and signature, and
+     * replaces their results
+     */
+    private void resendStale(Invocation[] invocations, InvocationResult[] results) throws Exception {
+        int stale = 0;
+        for (InvocationResult result : results) {
+            if (result.getFailure() instanceof StaleIdException) {
+                stale++;
+            }
+        }
+        if (stale == 0) {
+            return;
+        }
+        Invocation[] resend = new Invocation[stale];
+        int[] indexes = new int[stale];
+        int j = 0;
+        for (int i = 0 ; i < results.length ; i++) {
+            if (results[i].getFailure() instanceof StaleIdException) {
+                idsRejected(invocations[i].getName());
+                resend[j] = invocations[i].withoutIds();
+                indexes[j++] = i;
+            }
+        }
+        InvocationResult[] resent = (InvocationResult[])invokeOperation("invokeBatch", new Object[] {resend}, INVOKE_BATCH_SIG);
+        for (int i = 0 ; i < stale ; i++) {
+            results[indexes[i]] = resent[i];
+        }
+    }
+
+    /**
+     * Turns a streamed result back into the declared return type of the method. {@link InputStream} and
+     * {@link Iterator} results read the rest of the chunks lazily, others are read in full
+     *
+     * @param type the declared return type of the method
+     * @param value the value returned by the server
+     * @return the result
+     */
+    Object readResult(Class<?> type, Object value) throws IOException {
+        if (value instanceof ResultChunk == false) {
+            return value;
+        }
+        ResultChunk chunk = (ResultChunk)value;
+        if (type == InputStream.class) {
+            return new ChunkedInputStream(this, chunk);
+        }
+        if (type == Iterator.class) {
+            return new ChunkedIterator(this, chunk);
+        }
+        if (type == byte[].class) {
+            InputStream in = new ChunkedInputStream(this, chunk);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int read = in.read(buf);
+            while (read >= 0) {
+                out.write(buf, 0, read);
+                read = in.read(buf);
+            }
+            return out.toByteArray();
+        }
+        Collection<Object> result = type == Set.class ? new LinkedHashSet<Object>() : new ArrayList<Object>();
+        for (Iterator<Object> it = new ChunkedIterator(this, chunk) ; it.hasNext() ; ) {
+            result.add(it.next());
+        }
+        return result;
+    }
+
+    ResultChunk nextResultChunk(long cursorId) {
+        try {
+            return (ResultChunk)invokeOperation("nextResultChunk", new Object[] {cursorId}, CURSOR_SIG);
+        } catch (Exception e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    void closeResultCursor(long cursorId) {
+        try {
+            invokeOperation("closeResultCursor", new Object[] {cursorId}, CURSOR_SIG);
+        } catch (Exception ignore) {
+            //The server discards it anyway once it has been idle for long enough
+        }
+    }
+
+    /**
+     * Gets the version of what the server has told us about a name. It changes when the server reports that the
+     * name changed or that the MBean stopped, after which any ids handed out with the name can no longer be trusted
+     *
+     * @param name the name
+     * @return the version
+     */
+    long getNameVersion(String name) {
+        Long nameVersion = nameVersions.get(name);
+        long stopVersion = this.stopVersion;
+        return nameVersion == null || nameVersion < stopVersion ? stopVersion : nameVersion;
+    }
+
+    /**
+     * Gets the descriptor of a bean interface method, creating it the first time the method is called through any
+     * of our proxies
+     *
+     * @param method the method
+     * @return the descriptor
+     */
+    MethodDescriptor getDescriptor(Method method) {
+        MethodDescriptor descriptor = descriptors.get(method);
+        if (descriptor == null) {
+            descriptor = new MethodDescriptor(method);
+            MethodDescriptor existing = descriptors.putIfAbsent(method, descriptor);
+            if (existing != null) {
+                descriptor = existing;
+            }
+        }
+        return descriptor;
+    }
+
+    /**
+     * Gets the method ids for the method table sent by the server when looking up a bean. Every lookup of a name
+     * gets the same table until the bean is redeployed, so the ids are shared by its proxies
+     *
+     * @param name the JNDI name of the bean
+     * @param methodKeys the method table
+     * @return the ids of the method keys
+     */
+    Map<String, Integer> getMethodIds(String name, String[] methodKeys) {
+        MethodIds ids = methodIds.get(name);
+        if (ids == null || !Arrays.equals(ids.keys, methodKeys)) {
+            ids = new MethodIds(methodKeys);
+            methodIds.put(name, ids);
+        }
+        return ids.ids;
+    }
+
+    /**
+     * Stops the use of the ids handed out with a name, after the server rejected one of them
+     *
+     * @param name the name
+     */
+    void invalidateName(String name) {
+        nameVersions.put(name, version.incrementAndGet());
+    }
+
+    /**
+     * Stops the use of the ids handed out with a name after the server rejected one of them, and checks straight
+     * away whether that is because the MBean was restarted rather than waiting for the next heartbeat
+     *
+     * @param name the name
+     */
+    void idsRejected(String name) {
+        invalidateName(name);
+        if (instanceCheckPending.compareAndSet(false, true)) {
+            try {
+                HEARTBEATS.execute(new Runnable() {
+                    public void run() {
+                        instanceCheckPending.set(false);
+                        checkServer(true);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                instanceCheckPending.set(false);
+            }
+        }
+    }
+
+    /**
+     * Fails if the server reported that a stateful session was removed, saving the call to the server
+     *
+     * @param name the JNDI name of the stateful session bean
+     * @param sessionId the session id
+     * @param version the version of the name when the session was looked up
+     */
+    void checkSession(String name, long sessionId, long version) {
+        if (version < stopVersion) {
+            throw new IllegalStateException("Stateful session " + sessionId + " for " + name + " was removed when the server stopped");
+        }
+        boolean removed;
+        synchronized (removedSessions) {
+            removed = removedSessions.containsKey(sessionId);
+        }
+        if (removed) {
+            throw new IllegalStateException("Stateful session " + sessionId + " for " + name + " was removed by the server");
+        }
+    }
+
+    private synchronized void startHeartbeat() {
+        if (heartbeat == null && heartbeatInterval > 0) {
+            long interval = heartbeatInterval;
+            heartbeat = HEARTBEATS.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    checkServer(false);
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Checks that the MBean can be reached and whether it was restarted. Runs on the heartbeat threads, one check
+     * at a time
+     *
+     * @param immediate {@code true} to check even if backing off after failed heartbeats
+     */
+    private void checkServer(boolean immediate) {
+        synchronized (heartbeatLock) {
+            doCheckServer(immediate);
+        }
+    }
+
+    private void doCheckServer(boolean immediate) {
+        long now = System.currentTimeMillis();
+        if (now < nextHeartbeat && !immediate) {
+            //Backing off
+            return;
+        }
+        Object id;
+        try {
+            ConnectorPool.PooledConnector primary = pool.getPrimary();
+            if (subscription != primary) {
+                subscribe(primary);
+            }
+            try {
+                id = primary.getConnection().getAttribute(appMBeanName, "InstanceId");
+            } catch (AttributeNotFoundException e) {
+                //An older server, we can tell that it is there but not whether it restarted
+                id = null;
+            }
+            if (Long.valueOf(0).equals(id)) {
+                throw new IllegalStateException(appMBeanName + " is stopped");
+            }
+        } catch (Exception e) {
+            if (e instanceof IOException) {
+                //All the connectors go to the same server, so they are all likely to be broken
+                pool.reset();
+            }
+            heartbeatFailures++;
+            nextHeartbeat = now + Math.min(MAX_RECONNECT_BACKOFF, heartbeatInterval << Math.min(heartbeatFailures, 16));
+            if (connected) {
+                connected = false;
+                for (ConnectionListener listener : connectionListeners) {
+                    try {
+                        listener.connectionLost(this, e);
+                    } catch (RuntimeException ignore) {
+                    }
+                }
+            }
+            return;
+        }
+        heartbeatFailures = 0;
+        nextHeartbeat = 0;
+        //Calls may have stopped altogether, in which case releasing them no longer closes the idle connectors
+        pool.closeIdle(now);
+        Object last = instanceId;
+        instanceId = id;
+        if (!connected) {
+            connected = true;
+            for (ConnectionListener listener : connectionListeners) {
+                try {
+                    listener.connectionRestored(this);
+                } catch (RuntimeException ignore) {
+                }
+            }
+        }
+        if (last != null && id != null && !last.equals(id)) {
+            serverStopped();
+            for (ConnectionListener listener : connectionListeners) {
+                try {
+                    listener.serverRestarted(this);
+                } catch (RuntimeException ignore) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets what the server told us since all the stateful sessions and ids are gone when the MBean stops
+     */
+    private void serverStopped() {
+        stopVersion = version.incrementAndGet();
+        synchronized (removedSessions) {
+            removedSessions.clear();
+        }
+        //The listener goes away with the MBean, subscribe again once it is back
+        subscription = null;
+    }
+
+    private synchronized void subscribe(ConnectorPool.PooledConnector connector) throws IOException {
+        if (subscription == connector) {
+            return;
+        }
+        try {
+            connector.getConnection().addNotificationListener(appMBeanName, serverListener, new SessionOwnerFilter(clientId), null);
+            subscription = connector;
+        } catch (InstanceNotFoundException e) {
+            //Not deployed (yet), try again next time
+        } catch (RuntimeException e) {
+            subscription = connector;
+        }
+    }
+
+    private synchronized AsyncInvocationDispatcher getAsyncDispatcher() {
+        if (asyncDispatcher == null) {
+            asyncDispatcher = new AsyncInvocationDispatcher(this, asyncThreads, asyncQueueCapacity);
+        }
+        return asyncDispatcher;
+    }
+
+    private static long newClientId() {
+        long id;
+        do {
+            id = new SecureRandom().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
     ObjectName getAppMBeanName() {
         return appMBeanName;
     }
+
+    private static class MethodIds {
+        final String[] keys;
+        final Map<String, Integer> ids;
+
+        MethodIds(String[] keys) {
+            this.keys = keys;
+            this.ids = new HashMap<String, Integer>();
+            for (int i = 0 ; i < keys.length ; i++) {
+                ids.put(keys[i], i);
+            }
+        }
+    }
+
+    private class ServerListener implements NotificationListener {
+        public void handleNotification(Notification notification, Object handback) {
+            String type = notification.getType();
+            if (ServerNotifications.SESSIONS_REMOVED.equals(type)) {
+                long[] ids = (long[])notification.getUserData();
+                synchronized (removedSessions) {
+                    for (long id : ids) {
+                        removedSessions.put(id, Boolean.TRUE);
+                    }
+                }
+            } else if (ServerNotifications.NAMES_CHANGED.equals(type)) {
+                for (String name : (String[])notification.getUserData()) {
+                    invalidateName(name);
+                }
+            } else if (ServerNotifications.STOPPING.equals(type)) {
+                serverStopped();
+            }
+            for (NotificationListener listener : listeners) {
+                try {
+                    listener.handleNotification(notification, null);
+                } catch (RuntimeException ignore) {
+                }
+            }
+        }
+    }
 }
@@ -24,6 +24,13 @@ package org.jboss.as.remote.jmx.client;
 import java.io.Serializable;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.util.Map;
+
+import javax.management.RuntimeMBeanException;
+
+import org.jboss.as.remote.jmx.common.BeanBusyException;
+import org.jboss.as.remote.jmx.common.Invocation;
+import org.jboss.as.remote.jmx.common.StaleIdException;
 
 /**
  *
@@ -33,18 +40,130 @@ import java.lang.reflect.Method;
 abstract class ClientBeanHandler implements InvocationHandler, Serializable {
     private static final long serialVersionUID = 1L;
     private final String name;
+    private final int nameId;
+    private final long instanceId;
+    private final String[] methodKeys;
     private volatile Client client;
+    private transient volatile long version;
+    private transient volatile Map<String, Integer> methodIds;
 
     public ClientBeanHandler(String name) {
+        this(name, -1, 0, null);
+    }
+
+    public ClientBeanHandler(String name, int nameId, long instanceId, String[] methodKeys) {
         this.name = name;
+        this.nameId = nameId;
+        this.instanceId = instanceId;
+        this.methodKeys = methodKeys;
     }
 
     void setClient(Client client) {
         this.client = client;
+        this.version = client.getNameVersion(name);
+    }
+
+    /**
+     * Get the version of the name when this handler was looked up
+     *
+     * @see Client#getNameVersion(String)
+     */
+    long getVersion() {
+        return version;
+    }
+
+    Client getClient() {
+        return client;
+    }
+
+    /**
+     * Get the id of the MBean instance which handed out the ids
+     *
+     * @return the instance id, or {@code 0} for an older server
+     */
+    long getInstanceId() {
+        return instanceId;
+    }
+
+    Invocation createInvocation(Method method, Object[] args) {
+        MethodDescriptor descriptor = getDescriptor(method);
+        if (client.getNameVersion(name) != version) {
+            //The server reported that the name changed, so the ids we were given may point elsewhere now
+            return Invocation.create(name, -1, 0, getSessionId(), descriptor.getReturnTypeName(), descriptor.getMethodName(), descriptor.getSignature(), args);
+        }
+        int methodId = getMethodId(descriptor);
+        if (methodId >= 0) {
+            return Invocation.create(name, nameId, instanceId, getSessionId(), methodId, descriptor.getMethodHash(),
+                    descriptor.getReturnTypeName(), descriptor.getMethodName(), descriptor.getSignature(), args);
+        }
+        return Invocation.create(name, nameId, instanceId, getSessionId(), descriptor.getReturnTypeName(), descriptor.getMethodName(), descriptor.getSignature(), args);
+    }
+
+    /**
+     * Gets the descriptor of a method, which is shared by all the proxies of the client
+     *
+     * @param method the method
+     * @return the descriptor
+     */
+    MethodDescriptor getDescriptor(Method method) {
+        return client.getDescriptor(method);
+    }
+
+    /**
+     * Whether the server handed out a name id at lookup, meaning that it accepts the compact {@link Invocation} envelope
+     */
+    boolean isEnvelopeSupported() {
+        return nameId >= 0;
+    }
+
+    long getSessionId() {
+        return Invocation.NO_SESSION;
     }
 
     public final Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        return doInvoke(proxy, client, name, method, args);
+        Object result;
+        try {
+            result = doInvoke(proxy, client, name, method, args);
+        } catch (RuntimeMBeanException e) {
+            if (e.getCause() instanceof StaleIdException == false) {
+                throw unwrap(e);
+            }
+            //The bean was not called. Stop using the ids, and the next invocation is identified by name and signature
+            client.idsRejected(name);
+            try {
+                result = doInvoke(proxy, client, name, method, args);
+            } catch (RuntimeMBeanException retry) {
+                throw unwrap(retry);
+            }
+        }
+        return client.readResult(method.getReturnType(), result);
+    }
+
+    private static Throwable unwrap(RuntimeMBeanException e) {
+        if (e.getCause() instanceof BeanBusyException) {
+            //Throw it as is so that callers can tell that the invocation may be retried
+            return e.getCause();
+        }
+        return e;
+    }
+
+    /**
+     * Gets the id of a method in the method table sent by the server at lookup
+     *
+     * @param descriptor the descriptor of the method
+     * @return the method id, or {@code -1} if the server did not send a method table or the method is not in it
+     */
+    int getMethodId(MethodDescriptor descriptor) {
+        if (methodKeys == null) {
+            return -1;
+        }
+        Map<String, Integer> ids = methodIds;
+        if (ids == null) {
+            ids = client.getMethodIds(name, methodKeys);
+            methodIds = ids;
+        }
+        Integer id = ids.get(descriptor.getKey());
+        return id == null ? -1 : id;
     }
 
     abstract Object doInvoke(Object proxy, Client client, String name, Method method, Object[] args) throws Throwable;
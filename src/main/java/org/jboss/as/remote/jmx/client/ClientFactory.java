@@ -21,8 +21,10 @@
 */
 package org.jboss.as.remote.jmx.client;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.management.ObjectName;
 
@@ -31,6 +33,10 @@ import org.jboss.as.remote.jmx.mbean.RemoteViaJMX;
 /**
  * Factory to create clients to look up things in JNDI and invoke upon EJBs via JMX.
  * For this to work your application must deploy the {@link RemoteViaJMX} MBean.
+ * <p/>
+ * Clients are shared by everyone asking for the same MBean on the same server, and are reference counted, so
+ * each {@link #getOrCreateClient(ObjectName, String, int)} or successful {@link #getClient(ObjectName, String, int)}
+ * must be matched by exactly one {@link Client#remove()}. The connections are closed when the last user removes it.
  *
  * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
  * @version $Revision: 1.1 $
@@ -39,17 +45,40 @@ public class ClientFactory {
 
     public static final ClientFactory INSTANCE = new ClientFactory();
 
-    Map<ObjectName, Client> clients = new HashMap<ObjectName, Client>();
+    final ConcurrentMap<Key, Client> clients = new ConcurrentHashMap<Key, Client>();
 
     /**
-     * Gets a client via the object name of the registered {@link RemoteViaJMX} MBean.
+     * Gets an existing client via the object name of the registered {@link RemoteViaJMX} MBean.
      * This client can be reused until it is no longer needed, as long as the MBean is deployed
      *
      * @param appName the object name of the {@link RemoteViaJMX} MBean the client is communicating with
      * @return a client that can be used to lookup things in JNDI and invoke upon EJBs or null if it does not exist.
+     * @throws IllegalStateException if there are clients for MBeans with that name on more than one server
      */
-    public synchronized Client getClient(ObjectName appName) {
-        return clients.get(appName);
+    public Client getClient(ObjectName appName) {
+        Key found = null;
+        for (Key key : clients.keySet()) {
+            if (key.appName.equals(appName)) {
+                if (found != null) {
+                    throw new IllegalStateException("There are clients for " + appName + " on more than one server, use getClient(ObjectName, String, int)");
+                }
+                found = key;
+            }
+        }
+        return found == null ? null : getClient(found);
+    }
+
+    /**
+     * Gets an existing client via the object name of the registered {@link RemoteViaJMX} MBean and the server.
+     * This client can be reused until it is no longer needed, as long as the MBean is deployed
+     *
+     * @param appName the object name of the {@link RemoteViaJMX} MBean the client is communicating with
+     * @param host the host name of the application server. If {@code null} it defaults to {@code localhost}
+     * @param port the port of the jmx connector on the application server. If {@code <=0} it defaults to {@code 1090}
+     * @return a client that can be used to lookup things in JNDI and invoke upon EJBs or null if it does not exist.
+     */
+    public Client getClient(ObjectName appName, String host, int port) {
+        return getClient(new Key(appName, host, port));
     }
 
     /**
@@ -63,24 +92,128 @@ public class ClientFactory {
      * @param port the port of the jmx connector on the application server. If {@code <=0} it defaults to {@code 1090}
      * @return a client that can be used to lookup things in JNDI and invoke upon EJBs
      */
-    public synchronized Client getOrCreateClient(ObjectName appName, String host, int port) {
-        Client client = clients.get(appName);
-        if (client == null) {
-            client = new Client(this, appName, host, port);
-            clients.put(appName, client);
+    public Client getOrCreateClient(ObjectName appName, String host, int port) {
+        Key key = new Key(appName, host, port);
+        while (true) {
+            Client client = clients.get(key);
+            if (client == null) {
+                //Creating a client does not connect, so losing the race costs nothing
+                Client created = new Client(this, key, appName, key.host, key.port);
+                client = clients.putIfAbsent(key, created);
+                if (client == null) {
+                    client = created;
+                }
+            }
+            if (client.retain()) {
+                return client;
+            }
+            //The last user removed it just now
+            clients.remove(key, client);
+        }
+    }
+
+    /**
+     * Creates a client for MBeans with the same object name on several servers, which spreads the invocations on
+     * stateless session beans across them. It uses the clients returned by
+     * {@link #getOrCreateClient(ObjectName, String, int)} for each server, and {@link ClusterClient#remove()} removes them
+     *
+     * @param appName the object name of the {@link RemoteViaJMX} MBean on each server
+     * @param endpoints the servers as {@code host:port}, or just {@code host} for the default port
+     * @param policy the policy choosing the server for each invocation, if {@code null}
+     * {@link LoadBalancePolicies#roundRobin()} is used
+     * @return the cluster client
+     */
+    public ClusterClient createClusterClient(ObjectName appName, String[] endpoints, LoadBalancePolicy policy) {
+        if (endpoints == null || endpoints.length == 0) {
+            throw new IllegalArgumentException("No endpoints");
+        }
+        List<Client> clients = new ArrayList<Client>(endpoints.length);
+        for (String endpoint : endpoints) {
+            endpoint = endpoint.trim();
+            String host = endpoint;
+            int port = 0;
+            int colon = endpoint.lastIndexOf(':');
+            if (colon > 0 && endpoint.indexOf(':') == colon) {
+                host = endpoint.substring(0, colon);
+                try {
+                    port = Integer.parseInt(endpoint.substring(colon + 1));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad port in endpoint " + endpoint);
+                }
+            }
+            Client client = getOrCreateClient(appName, host, port);
+            if (clients.contains(client)) {
+                client.remove();
+                continue;
+            }
+            clients.add(client);
         }
-        return client;
+        return new ClusterClient(clients, policy == null ? LoadBalancePolicies.roundRobin() : policy);
     }
 
     /**
-     * Closes a client instance
+     * Called when a user of a client removes it, closing it if it was the last one
      *
-     * @param the object name of the {@link RemoteViaJMX} MBean the client is communicating with
+     * @param client the client
      */
-    synchronized void closeClient(ObjectName appName) {
-        Client client = clients.remove(appName);
-        if (client != null) {
+    void release(Client client) {
+        if (client.release()) {
+            clients.remove(client.getKey(), client);
             client.safeClose();
         }
     }
+
+    private Client getClient(Key key) {
+        Client client = clients.get(key);
+        if (client != null && client.retain()) {
+            return client;
+        }
+        return null;
+    }
+
+    /**
+     * Identifies the MBean on a server, the service URL is included since it overrides the host and port if set
+     */
+    static final class Key {
+        private final ObjectName appName;
+        private final String host;
+        private final int port;
+        private final String serviceUrl;
+        private final int hash;
+
+        Key(ObjectName appName, String host, int port) {
+            this.appName = appName;
+            this.host = host == null ? Client.DEFAULT_HOST : host;
+            this.port = port <= 0 ? Client.DEFAULT_PORT : port;
+            this.serviceUrl = System.getProperty("jmx.service.url");
+            int hash = appName.hashCode();
+            hash = 31 * hash + this.host.hashCode();
+            hash = 31 * hash + this.port;
+            hash = 31 * hash + (serviceUrl == null ? 0 : serviceUrl.hashCode());
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj instanceof Key == false) {
+                return false;
+            }
+            Key other = (Key)obj;
+            return hash == other.hash && port == other.port && appName.equals(other.appName) && host.equals(other.host)
+                    && (serviceUrl == null ? other.serviceUrl == null : serviceUrl.equals(other.serviceUrl));
+        }
+
+        @Override
+        public String toString() {
+            return appName + "@" + (serviceUrl == null ? host + ":" + port : serviceUrl);
+        }
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.client;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.naming.NamingException;
+
+import org.jboss.as.remote.jmx.common.BeanBusyException;
+
+/**
+ * Sends each invocation on a stateless session bean to the node chosen by the {@link ClusterClient}, using a
+ * proxy looked up on that node the first time it is chosen
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+class ClusterBeanHandler implements InvocationHandler {
+    private final ClusterClient cluster;
+    private final Class<?> clazz;
+    private final String name;
+    private final ConcurrentMap<ClusterNode, Object> proxies = new ConcurrentHashMap<ClusterNode, Object>();
+
+    ClusterBeanHandler(ClusterClient cluster, Class<?> clazz, String name, ClusterNode node, Object proxy) {
+        this.cluster = cluster;
+        this.clazz = clazz;
+        this.name = name;
+        proxies.put(node, proxy);
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        ClusterNode exclude = null;
+        Throwable failure = null;
+        for (int i = 0 ; i < cluster.size() ; i++) {
+            ClusterNode node = cluster.select(exclude);
+            Object target;
+            try {
+                target = getProxy(node);
+            } catch (RuntimeException e) {
+                if (!ClusterClient.isConnectFailure(e)) {
+                    throw e;
+                }
+                cluster.eject(node);
+                exclude = node;
+                failure = e;
+                continue;
+            }
+            node.started();
+            long start = System.nanoTime();
+            boolean reached = true;
+            try {
+                return Proxy.getInvocationHandler(target).invoke(target, method, args);
+            } catch (BeanBusyException e) {
+                //The bean was not called, so another node may take it
+                exclude = node;
+                failure = e;
+            } catch (IllegalStateException e) {
+                if (!ClusterClient.isConnectFailure(e)) {
+                    throw e;
+                }
+                reached = false;
+                cluster.eject(node);
+                exclude = node;
+                failure = e;
+            } finally {
+                node.finished(reached ? System.nanoTime() - start : -1);
+            }
+        }
+        throw failure;
+    }
+
+    private Object getProxy(ClusterNode node) throws NamingException {
+        Object proxy = proxies.get(node);
+        if (proxy == null) {
+            //Each lookup of a stateless session bean gives an equivalent proxy, so losing the race does not matter
+            proxy = node.getClient().lookup(clazz, name);
+            Object existing = proxies.putIfAbsent(node, proxy);
+            if (existing != null) {
+                proxy = existing;
+            }
+        }
+        return proxy;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.client;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.naming.NamingException;
+
+/**
+ * A client for the same {@link org.jboss.as.remote.jmx.mbean.RemoteViaJMX} MBean deployed on several servers.
+ * Invocations on stateless session beans looked up through it are spread across the healthy servers by a
+ * {@link LoadBalancePolicy}. Stateful session beans and other names stay on the server they were looked up on.
+ * <p/>
+ * A server is ejected for a while when it cannot be connected to, and while the heartbeat of its {@link Client}
+ * cannot reach it. Invocations which fail to connect, or are rejected with a
+ * {@link org.jboss.as.remote.jmx.common.BeanBusyException}, are retried on another server since the bean was not
+ * called. Other failures are not retried.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class ClusterClient {
+    private static final long DEFAULT_EJECTION_TIME = 30000;
+
+    private final ClusterNode[] nodes;
+    private final LoadBalancePolicy policy;
+    /** The last candidates passed to the policy when some nodes were left out, reused while they stay the same */
+    private volatile ClusterNode[] candidates = new ClusterNode[0];
+    private volatile long ejectionTime = DEFAULT_EJECTION_TIME;
+
+    ClusterClient(List<Client> clients, LoadBalancePolicy policy) {
+        this.nodes = new ClusterNode[clients.size()];
+        for (int i = 0 ; i < nodes.length ; i++) {
+            nodes[i] = new ClusterNode(clients.get(i));
+        }
+        this.policy = policy;
+    }
+
+    /**
+     * Looks up in JNDI on one of the servers.
+     * If it is a stateless session bean the returned proxy sends each invocation to the server chosen by the policy,
+     * otherwise it is the same as {@link Client#lookup(Class, String)} on one of the servers
+     *
+     * @param clazz the expected type to return.
+     * @param name the name we are looking up
+     */
+    public <T> T lookup(Class<T> clazz, String name) throws NamingException {
+        ClusterNode exclude = null;
+        RuntimeException failure = null;
+        for (int i = 0 ; i < nodes.length ; i++) {
+            ClusterNode node = select(exclude);
+            T value;
+            try {
+                value = node.getClient().lookup(clazz, name);
+            } catch (RuntimeException e) {
+                if (!isConnectFailure(e)) {
+                    throw e;
+                }
+                eject(node);
+                exclude = node;
+                failure = e;
+                continue;
+            }
+            InvocationHandler handler = Proxy.isProxyClass(value.getClass()) ? Proxy.getInvocationHandler(value) : null;
+            if (handler instanceof StatelessBeanHandler == false) {
+                return value;
+            }
+            ClusterBeanHandler clusterHandler = new ClusterBeanHandler(this, clazz, name, node, value);
+            return clazz.cast(Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class[] {clazz}, clusterHandler));
+        }
+        throw failure;
+    }
+
+    /**
+     * Get the servers
+     *
+     * @return the nodes
+     */
+    public ClusterNode[] getNodes() {
+        return nodes.clone();
+    }
+
+    /**
+     * Sets how long a server is left out after an invocation could not connect to it
+     *
+     * @param ejectionTime the time in milliseconds, defaults to {@code 30000}
+     */
+    public void setEjectionTime(long ejectionTime) {
+        this.ejectionTime = ejectionTime;
+    }
+
+    /**
+     * Once done with this cluster client, removes it and the clients of each of the servers
+     */
+    public void remove() {
+        for (ClusterNode node : nodes) {
+            node.getClient().remove();
+        }
+    }
+
+    /**
+     * Chooses the node for an invocation
+     *
+     * @param exclude a node which should not be chosen unless it is the only one, may be {@code null}
+     * @return the node
+     */
+    ClusterNode select(ClusterNode exclude) {
+        boolean healthyOnly = true;
+        int count = countCandidates(exclude, true);
+        if (count == 0) {
+            //Better to try one which might have come back than to fail straight away
+            healthyOnly = false;
+            count = countCandidates(exclude, false);
+            if (count == 0) {
+                return exclude;
+            }
+        }
+        if (count == nodes.length) {
+            return policy.select(nodes);
+        }
+        ClusterNode[] candidates = this.candidates;
+        if (!isCandidates(candidates, exclude, healthyOnly)) {
+            candidates = new ClusterNode[count];
+            int j = 0;
+            for (ClusterNode node : nodes) {
+                if (j < count && isCandidate(node, exclude, healthyOnly)) {
+                    candidates[j++] = node;
+                }
+            }
+            if (j < count) {
+                //A node was ejected in the meantime
+                candidates = Arrays.copyOf(candidates, j);
+                if (j == 0) {
+                    return policy.select(nodes);
+                }
+            }
+            this.candidates = candidates;
+        }
+        return policy.select(candidates);
+    }
+
+    private int countCandidates(ClusterNode exclude, boolean healthyOnly) {
+        int count = 0;
+        for (ClusterNode node : nodes) {
+            if (isCandidate(node, exclude, healthyOnly)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Whether the candidates are exactly the nodes which are candidates now, in which case they can be reused
+     */
+    private boolean isCandidates(ClusterNode[] candidates, ClusterNode exclude, boolean healthyOnly) {
+        int j = 0;
+        for (ClusterNode node : nodes) {
+            if (isCandidate(node, exclude, healthyOnly)) {
+                if (j == candidates.length || candidates[j] != node) {
+                    return false;
+                }
+                j++;
+            }
+        }
+        return j == candidates.length;
+    }
+
+    private static boolean isCandidate(ClusterNode node, ClusterNode exclude, boolean healthyOnly) {
+        return node != exclude && (!healthyOnly || node.isHealthy());
+    }
+
+    int size() {
+        return nodes.length;
+    }
+
+    void eject(ClusterNode node) {
+        node.eject(ejectionTime);
+    }
+
+    /**
+     * Whether a failure happened while connecting to the server, so the invocation never got there
+     */
+    static boolean isConnectFailure(Throwable t) {
+        //Client turns the IOException from connecting into an IllegalStateException, which lookup wraps again
+        for (Throwable cause = t ; cause != null ; cause = cause.getCause()) {
+            if (cause instanceof IllegalStateException && cause.getCause() instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.client;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One of the servers of a {@link ClusterClient}, along with what is known about its load
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public final class ClusterNode {
+    /** The weight of the latest latency in the moving average */
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final Client client;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private double latencyEwma;
+    private volatile long ejectedUntil;
+
+    ClusterNode(Client client) {
+        this.client = client;
+    }
+
+    /**
+     * Get the client connected to this node
+     *
+     * @return the client
+     */
+    public Client getClient() {
+        return client;
+    }
+
+    /**
+     * Get the number of invocations sent to this node which have not returned yet
+     *
+     * @return the number of invocations
+     */
+    public int getOutstandingRequests() {
+        return outstanding.get();
+    }
+
+    /**
+     * Get the exponentially weighted moving average of the latency of the invocations on this node
+     *
+     * @return the average in nanoseconds, {@code 0} until the first invocation returns
+     */
+    public synchronized double getLatencyEwma() {
+        return latencyEwma;
+    }
+
+    /**
+     * Whether this node is used for invocations, which it is not while its client's heartbeat cannot reach it or
+     * for a while after an invocation could not reach it
+     *
+     * @return {@code true} if healthy
+     */
+    public boolean isHealthy() {
+        return client.isConnected() && System.currentTimeMillis() >= ejectedUntil;
+    }
+
+    void started() {
+        outstanding.incrementAndGet();
+    }
+
+    void finished(long nanos) {
+        outstanding.decrementAndGet();
+        if (nanos >= 0) {
+            synchronized (this) {
+                latencyEwma = latencyEwma == 0 ? nanos : latencyEwma + EWMA_ALPHA * (nanos - latencyEwma);
+            }
+        }
+    }
+
+    void eject(long time) {
+        ejectedUntil = System.currentTimeMillis() + time;
+    }
+
+    @Override
+    public String toString() {
+        return client.getKey().toString();
+    }
+}
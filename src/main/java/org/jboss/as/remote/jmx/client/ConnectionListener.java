@@ -0,0 +1,55 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.client;
+
+/**
+ * Listener notified by the heartbeat of a {@link Client} when the state of its connection to the server changes.
+ * It is called from the heartbeat thread, so it should not block
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public interface ConnectionListener {
+
+    /**
+     * Called when the server or its MBean could no longer be reached. The client keeps trying to reconnect
+     *
+     * @param client the client
+     * @param cause the failure
+     */
+    void connectionLost(Client client, Exception cause);
+
+    /**
+     * Called when the server and its MBean can be reached again after {@link #connectionLost(Client, Exception)}
+     *
+     * @param client the client
+     */
+    void connectionRestored(Client client);
+
+    /**
+     * Called when the MBean has been restarted since the last heartbeat, so all stateful sessions are gone.
+     * Stateless session bean proxies keep working
+     *
+     * @param client the client
+     */
+    void serverRestarted(Client client);
+}
@@ -0,0 +1,445 @@
+/*
+* JBoss, Home of Professional Open Source.
+* Copyright 2006, Red Hat Middleware LLC, and individual contributors
+* as indicated by the @author tags. See the copyright.txt file in the
+* distribution for a full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.as.remote.jmx.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+/**
+ * A bounded pool of JMX connectors to one server. Each call goes to the connector with the fewest calls in
+ * flight, and a new connector is opened when all of them are busy and the maximum has not been reached.
+ * Connectors beyond the minimum are closed once they have been idle for long enough, which is checked as calls are
+ * released and by the {@link Client}'s heartbeat. The first connector is never closed for being idle, so that
+ * notification listeners registered through it stay registered. New connectors are opened without holding the
+ * pool's lock, so that calls on the open connectors are not held up by a slow connect, and the connect is given up
+ * on after a timeout since the JMX remote API has no way of bounding it.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+final class ConnectorPool {
+    static final int DEFAULT_MIN_CONNECTORS = 1;
+    static final int DEFAULT_MAX_CONNECTORS = 4;
+    static final long DEFAULT_MAX_IDLE_TIME = 60000;
+    static final long DEFAULT_CONNECT_TIMEOUT = 10000;
+    private static final long IDLE_CHECK_INTERVAL = 1000;
+    private static final ExecutorService CONNECTS = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "RemoteViaJMX client connect");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final String defaultUrl;
+    private volatile PooledConnector[] connectors = new PooledConnector[0];
+    private volatile int minConnectors = DEFAULT_MIN_CONNECTORS;
+    private volatile int maxConnectors = DEFAULT_MAX_CONNECTORS;
+    private volatile long maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+    private volatile long connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private volatile long lastIdleCheck;
+    private int opening;
+    private boolean closed;
+
+    ConnectorPool(String host, int port) {
+        this.defaultUrl = "service:jmx:rmi:///jndi/rmi://" + host + ":" + port + "/jmxrmi";
+    }
+
+    /**
+     * Gets the least loaded connector, opening a new one if needed. The caller must pass it to
+     * {@link #release(PooledConnector)} once the call is done
+     *
+     * @return the connector
+     * @throws IOException if a new connector could not be opened
+     */
+    PooledConnector acquire() throws IOException {
+        while (true) {
+            PooledConnector[] connectors = this.connectors;
+            PooledConnector best = leastLoaded(connectors);
+            if (best == null || (best.inFlight.get() > 0 && connectors.length < maxConnectors)) {
+                best = grow(connectors);
+            }
+            if (best.tryAcquire()) {
+                return best;
+            }
+            //It was closed for being idle in the meantime
+        }
+    }
+
+    /**
+     * Releases a connector obtained from {@link #acquire()}
+     *
+     * @param connector the connector
+     */
+    void release(PooledConnector connector) {
+        long now = System.currentTimeMillis();
+        connector.lastUsed = now;
+        connector.inFlight.decrementAndGet();
+        if (now - lastIdleCheck >= IDLE_CHECK_INTERVAL) {
+            closeIdle(now);
+        }
+    }
+
+    /**
+     * Closes the connectors beyond the minimum which have been idle for longer than the maximum idle time
+     *
+     * @param now the current time in milliseconds
+     */
+    void closeIdle(long now) {
+        lastIdleCheck = now;
+        List<PooledConnector> idle = null;
+        synchronized (this) {
+            PooledConnector[] connectors = this.connectors;
+            long maxIdleTime = this.maxIdleTime;
+            int remaining = connectors.length;
+            for (int i = connectors.length - 1 ; i > 0 && remaining > minConnectors ; i--) {
+                PooledConnector connector = connectors[i];
+                if (now - connector.lastUsed >= maxIdleTime && connector.tryClose()) {
+                    if (idle == null) {
+                        idle = new ArrayList<PooledConnector>();
+                    }
+                    idle.add(connector);
+                    remove(connector);
+                    remaining--;
+                }
+            }
+        }
+        if (idle != null) {
+            for (PooledConnector connector : idle) {
+                connector.close();
+            }
+        }
+    }
+
+    /**
+     * Closes and removes a connector which failed, the next call opens a new one if needed
+     *
+     * @param connector the connector
+     */
+    void discard(PooledConnector connector) {
+        synchronized (this) {
+            remove(connector);
+        }
+        connector.close();
+    }
+
+    /**
+     * Gets the first connector, which stays open for as long as it works, opening it if needed
+     *
+     * @return the connector
+     * @throws IOException if it could not be opened
+     */
+    PooledConnector getPrimary() throws IOException {
+        PooledConnector[] connectors = this.connectors;
+        if (connectors.length > 0) {
+            return connectors[0];
+        }
+        return grow(connectors);
+    }
+
+    /**
+     * Closes all the connectors, new ones are opened as needed
+     */
+    void reset() {
+        PooledConnector[] connectors;
+        synchronized (this) {
+            connectors = this.connectors;
+            this.connectors = new PooledConnector[0];
+        }
+        for (PooledConnector connector : connectors) {
+            connector.close();
+        }
+    }
+
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+        PooledConnector[] connectors = this.connectors;
+        this.connectors = new PooledConnector[0];
+        for (PooledConnector connector : connectors) {
+            connector.close();
+        }
+    }
+
+    String getServiceUrl() {
+        return System.getProperty("jmx.service.url", defaultUrl);
+    }
+
+    int size() {
+        return connectors.length;
+    }
+
+    void setMinConnectors(int min) {
+        this.minConnectors = min;
+    }
+
+    void setMaxConnectors(int max) {
+        this.maxConnectors = max;
+    }
+
+    void setMaxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    void setConnectTimeout(long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    private PooledConnector grow(PooledConnector[] seen) throws IOException {
+        synchronized (this) {
+            while (true) {
+                if (closed) {
+                    throw new IllegalStateException("Client was removed");
+                }
+                PooledConnector[] connectors = this.connectors;
+                PooledConnector best = leastLoaded(connectors);
+                if (connectors != seen) {
+                    //Someone else opened or closed one while we were waiting, use that unless it is busy too
+                    if (best != null && (best.inFlight.get() == 0 || connectors.length >= maxConnectors)) {
+                        return best;
+                    }
+                }
+                if (connectors.length + opening < Math.max(1, maxConnectors)) {
+                    opening++;
+                    break;
+                }
+                if (best != null) {
+                    //The connectors being opened would take us to the maximum, so share a busy one
+                    return best;
+                }
+                //The only connector is being opened by someone else
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for a connector to " + getServiceUrl());
+                }
+                seen = null;
+            }
+        }
+        try {
+            PooledConnector connector = new PooledConnector(connect(new JMXServiceURL(getServiceUrl())));
+            synchronized (this) {
+                if (!closed) {
+                    add(connector);
+                    return connector;
+                }
+            }
+            //The pool was closed while we were connecting
+            connector.close();
+            throw new IllegalStateException("Client was removed");
+        } finally {
+            synchronized (this) {
+                opening--;
+                notifyAll();
+            }
+        }
+    }
+
+    private static PooledConnector leastLoaded(PooledConnector[] connectors) {
+        PooledConnector best = null;
+        int bestInFlight = Integer.MAX_VALUE;
+        for (PooledConnector connector : connectors) {
+            int inFlight = connector.inFlight.get();
+            if (inFlight >= 0 && inFlight < bestInFlight) {
+                best = connector;
+                bestInFlight = inFlight;
+            }
+        }
+        return best;
+    }
+
+    private JMXConnector connect(JMXServiceURL url) throws IOException {
+        long timeout = connectTimeout;
+        if (timeout <= 0) {
+            return JMXConnectorFactory.connect(url, null);
+        }
+        TimedConnect connect = new TimedConnect(url);
+        Future<JMXConnector> future = CONNECTS.submit(connect);
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (connect.abandon()) {
+                throw new IOException("Timed out after " + timeout + "ms connecting to " + url);
+            }
+            //It connected just now
+            return getConnected(future);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (connect.abandon()) {
+                throw new InterruptedIOException("Interrupted connecting to " + url);
+            }
+            return getConnected(future);
+        } catch (ExecutionException e) {
+            throw connectFailed(url, e);
+        }
+    }
+
+    private JMXConnector getConnected(Future<JMXConnector> future) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    //Not possible, it only gets abandoned before it has connected
+                    throw new IOException("Could not connect", e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static IOException connectFailed(JMXServiceURL url, ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException)cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException)cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error)cause;
+        }
+        return new IOException("Could not connect to " + url, cause);
+    }
+
+    private void add(PooledConnector connector) {
+        PooledConnector[] connectors = this.connectors;
+        PooledConnector[] grown = new PooledConnector[connectors.length + 1];
+        System.arraycopy(connectors, 0, grown, 0, connectors.length);
+        grown[connectors.length] = connector;
+        this.connectors = grown;
+    }
+
+    private void remove(PooledConnector connector) {
+        PooledConnector[] connectors = this.connectors;
+        for (int i = 0 ; i < connectors.length ; i++) {
+            if (connectors[i] == connector) {
+                PooledConnector[] shrunk = new PooledConnector[connectors.length - 1];
+                System.arraycopy(connectors, 0, shrunk, 0, i);
+                System.arraycopy(connectors, i + 1, shrunk, i, shrunk.length - i);
+                this.connectors = shrunk;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Connects on one of the {@link #CONNECTS} threads. If the caller gives up waiting, the connector is closed as
+     * soon as it connects
+     */
+    private static final class TimedConnect implements Callable<JMXConnector> {
+        private static final int CONNECTING = 0;
+        private static final int CONNECTED = 1;
+        private static final int ABANDONED = 2;
+
+        private final JMXServiceURL url;
+        private final AtomicInteger state = new AtomicInteger(CONNECTING);
+
+        TimedConnect(JMXServiceURL url) {
+            this.url = url;
+        }
+
+        public JMXConnector call() throws IOException {
+            JMXConnector connector = JMXConnectorFactory.connect(url, null);
+            if (!state.compareAndSet(CONNECTING, CONNECTED)) {
+                try {
+                    connector.close();
+                } catch (IOException ignore) {
+                }
+            }
+            return connector;
+        }
+
+        /**
+         * Gives up on the connect
+         *
+         * @return {@code false} if it connected before it could be given up on, so the connector must be used
+         */
+        boolean abandon() {
+            return state.compareAndSet(CONNECTING, ABANDONED);
+        }
+    }
+
+    /**
+     * A connector in the pool
+     */
+    static final class PooledConnector {
+        private final JMXConnector connector;
+        /** The number of calls in flight, or {@code -1} once closed for being idle */
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private PooledConnector(JMXConnector connector) {
+            this.connector = connector;
+        }
+
+        MBeanServerConnection getConnection() throws IOException {
+            return connector.getMBeanServerConnection();
+        }
+
+        private boolean tryAcquire() {
+            while (true) {
+                int current = inFlight.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private boolean tryClose() {
+            return inFlight.compareAndSet(0, -1);
+        }
+
+        private void close() {
+            try {
+                connector.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+}
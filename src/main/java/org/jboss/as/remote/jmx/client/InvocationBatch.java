@@ -0,0 +1,127 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.client;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.as.remote.jmx.common.Invocation;
+import org.jboss.as.remote.jmx.common.InvocationResult;
+
+/**
+ * Collects invocations on bean proxies obtained from a {@link Client}, and sends them to the server in one call
+ * when {@link #execute()} is called, saving a round trip per invocation.
+ * <pre>
+ * InvocationBatch batch = client.createBatch();
+ * int first = batch.add(bean, "test", new Class[] {Boolean.TYPE}, true);
+ * int second = batch.add(bean, "test", new Class[] {Boolean.TYPE}, false);
+ * BatchResults results = batch.execute();
+ * int i = (Integer)results.get(first);
+ * </pre>
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class InvocationBatch {
+    private final Client client;
+    private final List<Invocation> invocations = new ArrayList<Invocation>();
+
+    InvocationBatch(Client client) {
+        this.client = client;
+    }
+
+    /**
+     * Adds an invocation to the batch
+     *
+     * @param proxy the bean proxy returned by {@link Client#lookup(Class, String)}
+     * @param method the method to invoke
+     * @param args the arguments
+     * @return the index of the result in the {@link BatchResults}
+     */
+    public int add(Object proxy, Method method, Object...args) {
+        invocations.add(getHandler(proxy).createInvocation(method, args == null || args.length == 0 ? null : args));
+        return invocations.size() - 1;
+    }
+
+    /**
+     * Adds an invocation to the batch
+     *
+     * @param proxy the bean proxy returned by {@link Client#lookup(Class, String)}
+     * @param methodName the name of the method to invoke
+     * @param paramTypes the parameter types of the method to invoke
+     * @param args the arguments
+     * @return the index of the result in the {@link BatchResults}
+     */
+    public int add(Object proxy, String methodName, Class<?>[] paramTypes, Object...args) {
+        Method method;
+        try {
+            method = proxy.getClass().getMethod(methodName, paramTypes);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("No method called " + methodName + " found on " + proxy, e);
+        }
+        return add(proxy, method, args);
+    }
+
+    /**
+     * Get the number of invocations in the batch
+     *
+     * @return the number of invocations
+     */
+    public int size() {
+        return invocations.size();
+    }
+
+    /**
+     * Removes all invocations from the batch
+     */
+    public void clear() {
+        invocations.clear();
+    }
+
+    /**
+     * Sends all the invocations in the batch to the server in one call. Failures of individual invocations do not
+     * stop the others from being performed, and are reported by the returned results
+     *
+     * @return the results
+     */
+    public BatchResults execute() {
+        if (invocations.isEmpty()) {
+            return new BatchResults(new InvocationResult[0]);
+        }
+        return new BatchResults(client.invokeBatch(invocations.toArray(new Invocation[invocations.size()])));
+    }
+
+    private ClientBeanHandler getHandler(Object proxy) {
+        InvocationHandler handler = Proxy.isProxyClass(proxy.getClass()) ? Proxy.getInvocationHandler(proxy) : null;
+        if (handler instanceof ClientBeanHandler == false) {
+            throw new IllegalArgumentException(proxy + " is not a bean proxy");
+        }
+        ClientBeanHandler beanHandler = (ClientBeanHandler)handler;
+        if (beanHandler.getClient() != client) {
+            throw new IllegalArgumentException(proxy + " was not looked up by the client of this batch");
+        }
+        return beanHandler;
+    }
+}
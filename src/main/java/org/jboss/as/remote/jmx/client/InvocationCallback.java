@@ -0,0 +1,47 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.client;
+
+/**
+ * Callback notified when an asynchronous invocation completes
+ *
+ * @param <V> the type of the result
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public interface InvocationCallback<V> {
+
+    /**
+     * Called when the invocation returned normally
+     *
+     * @param result the returned value
+     */
+    void completed(V result);
+
+    /**
+     * Called when the invocation threw an exception, timed out or was cancelled
+     *
+     * @param failure the exception thrown by the invocation, a {@link java.util.concurrent.TimeoutException}
+     * or a {@link java.util.concurrent.CancellationException}
+     */
+    void failed(Throwable failure);
+}
@@ -0,0 +1,202 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jboss.as.remote.jmx.common.Invocation;
+
+/**
+ * The pending result of an asynchronous invocation made via an {@link AsyncInvoker}.
+ * <p/>
+ * Cancelling an invocation which has not yet been sent to the server means it will not be sent. If it has already
+ * been sent it will still run on the server, but the result is discarded.
+ *
+ * @param <V> the type of the result
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public final class InvocationFuture<V> implements Future<V> {
+    private static final int PENDING = 0;
+    private static final int COMPLETED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private final Invocation invocation;
+    private int state = PENDING;
+    private V value;
+    private Throwable failure;
+    private List<InvocationCallback<? super V>> callbacks;
+    private ScheduledFuture<?> timeout;
+
+    InvocationFuture(Invocation invocation) {
+        this.invocation = invocation;
+    }
+
+    /**
+     * Adds a callback to be notified when the invocation completes. If it has already completed the callback is
+     * notified immediately in the calling thread
+     *
+     * @param callback the callback
+     */
+    public void addCallback(InvocationCallback<? super V> callback) {
+        synchronized (this) {
+            if (state == PENDING) {
+                if (callbacks == null) {
+                    callbacks = new ArrayList<InvocationCallback<? super V>>(1);
+                }
+                callbacks.add(callback);
+                return;
+            }
+        }
+        notifyCallback(callback);
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return finish(CANCELLED, null, null);
+    }
+
+    public synchronized boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    public synchronized boolean isDone() {
+        return state != PENDING;
+    }
+
+    public synchronized V get() throws InterruptedException, ExecutionException {
+        while (state == PENDING) {
+            wait();
+        }
+        return report();
+    }
+
+    public synchronized V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long remaining = unit.toNanos(timeout);
+        final long deadline = System.nanoTime() + remaining;
+        while (state == PENDING) {
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        return report();
+    }
+
+    Invocation getInvocation() {
+        return invocation;
+    }
+
+    /**
+     * Fails the invocation with a {@link TimeoutException} unless it finishes first, in which case the timeout is cancelled
+     *
+     * @param timer the timer
+     * @param timeout the timeout in milliseconds
+     */
+    void scheduleTimeout(ScheduledExecutorService timer, long timeout) {
+        ScheduledFuture<?> task = timer.schedule(new Runnable() {
+            public void run() {
+                fail(new TimeoutException("Invocation did not complete within the timeout"));
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        synchronized (this) {
+            if (state == PENDING) {
+                this.timeout = task;
+                return;
+            }
+        }
+        task.cancel(false);
+    }
+
+    @SuppressWarnings("unchecked")
+    boolean complete(Object value) {
+        return finish(COMPLETED, (V)value, null);
+    }
+
+    boolean fail(Throwable failure) {
+        return finish(FAILED, null, failure);
+    }
+
+    private boolean finish(int newState, V value, Throwable failure) {
+        List<InvocationCallback<? super V>> callbacks;
+        ScheduledFuture<?> timeout;
+        synchronized (this) {
+            if (state != PENDING) {
+                return false;
+            }
+            this.state = newState;
+            this.value = value;
+            this.failure = failure;
+            callbacks = this.callbacks;
+            this.callbacks = null;
+            timeout = this.timeout;
+            this.timeout = null;
+            notifyAll();
+        }
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+        if (callbacks != null) {
+            for (InvocationCallback<? super V> callback : callbacks) {
+                notifyCallback(callback);
+            }
+        }
+        return true;
+    }
+
+    private void notifyCallback(InvocationCallback<? super V> callback) {
+        final int state;
+        synchronized (this) {
+            state = this.state;
+        }
+        try {
+            if (state == COMPLETED) {
+                callback.completed(value);
+            } else if (state == CANCELLED) {
+                callback.failed(new CancellationException());
+            } else {
+                callback.failed(failure);
+            }
+        } catch (RuntimeException ignore) {
+            //Don't let a broken callback affect the others
+        }
+    }
+
+    private V report() throws ExecutionException {
+        if (state == CANCELLED) {
+            throw new CancellationException();
+        }
+        if (state == FAILED) {
+            throw new ExecutionException(failure);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.client;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The standard {@link LoadBalancePolicy} implementations
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public final class LoadBalancePolicies {
+
+    private LoadBalancePolicies() {
+    }
+
+    /**
+     * Sends the invocations to each node in turn
+     *
+     * @return the policy
+     */
+    public static LoadBalancePolicy roundRobin() {
+        return new RoundRobin();
+    }
+
+    /**
+     * Sends each invocation to the node with the fewest invocations in flight, which keeps slow nodes from
+     * piling up work
+     *
+     * @return the policy
+     */
+    public static LoadBalancePolicy leastOutstandingRequests() {
+        return new LeastOutstandingRequests();
+    }
+
+    /**
+     * Picks two nodes at random and sends the invocation to the one with the lower exponentially weighted moving
+     * average latency, scaled by the number of invocations it has in flight. Comparing two rather than all nodes
+     * keeps every client from sending its invocations to the same node at once. A node which has not returned an
+     * invocation yet is taken to have the average latency of the others, so that new nodes are not flooded, and
+     * until any node has returned one the node with fewer invocations in flight is chosen
+     *
+     * @return the policy
+     */
+    public static LoadBalancePolicy latencyWeighted() {
+        return new LatencyWeighted();
+    }
+
+    private static class RoundRobin implements LoadBalancePolicy {
+        private final AtomicInteger next = new AtomicInteger();
+
+        public ClusterNode select(ClusterNode[] nodes) {
+            return nodes[(next.getAndIncrement() & Integer.MAX_VALUE) % nodes.length];
+        }
+    }
+
+    private static class LeastOutstandingRequests implements LoadBalancePolicy {
+        private final AtomicInteger next = new AtomicInteger();
+
+        public ClusterNode select(ClusterNode[] nodes) {
+            //Start somewhere different each time so that ties do not all go to the first node
+            int start = (next.getAndIncrement() & Integer.MAX_VALUE) % nodes.length;
+            ClusterNode best = null;
+            int bestOutstanding = Integer.MAX_VALUE;
+            for (int i = 0 ; i < nodes.length ; i++) {
+                ClusterNode node = nodes[(start + i) % nodes.length];
+                int outstanding = node.getOutstandingRequests();
+                if (outstanding < bestOutstanding) {
+                    best = node;
+                    bestOutstanding = outstanding;
+                }
+            }
+            return best;
+        }
+    }
+
+    private static class LatencyWeighted implements LoadBalancePolicy {
+        private final Random random = new Random();
+
+        public ClusterNode select(ClusterNode[] nodes) {
+            if (nodes.length == 1) {
+                return nodes[0];
+            }
+            int first = random.nextInt(nodes.length);
+            int second = random.nextInt(nodes.length - 1);
+            if (second >= first) {
+                second++;
+            }
+            ClusterNode a = nodes[first];
+            ClusterNode b = nodes[second];
+            double latencyA = a.getLatencyEwma();
+            double latencyB = b.getLatencyEwma();
+            if (latencyA == 0 || latencyB == 0) {
+                double average = averageLatency(nodes);
+                if (average == 0) {
+                    return a.getOutstandingRequests() <= b.getOutstandingRequests() ? a : b;
+                }
+                if (latencyA == 0) {
+                    latencyA = average;
+                }
+                if (latencyB == 0) {
+                    latencyB = average;
+                }
+            }
+            return cost(a, latencyA) <= cost(b, latencyB) ? a : b;
+        }
+
+        private static double cost(ClusterNode node, double latency) {
+            return latency * (node.getOutstandingRequests() + 1);
+        }
+
+        /**
+         * Gets the average latency of the nodes which have returned an invocation
+         *
+         * @return the average in nanoseconds, or {@code 0} if none have
+         */
+        private static double averageLatency(ClusterNode[] nodes) {
+            double total = 0;
+            int sampled = 0;
+            for (ClusterNode node : nodes) {
+                double latency = node.getLatencyEwma();
+                if (latency > 0) {
+                    total += latency;
+                    sampled++;
+                }
+            }
+            return sampled == 0 ? 0 : total / sampled;
+        }
+    }
+}
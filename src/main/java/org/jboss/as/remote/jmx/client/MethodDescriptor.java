@@ -0,0 +1,91 @@
+/*
+* JBoss, Home of Professional Open Source.
+* Copyright 2006, Red Hat Middleware LLC, and individual contributors
+* as indicated by the @author tags. See the copyright.txt file in the
+* distribution for a full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.as.remote.jmx.client;
+
+import java.lang.reflect.Method;
+
+import org.jboss.as.remote.jmx.common.MethodUtil;
+
+/**
+ * The parts of a bean interface method sent to the server with each invocation, worked out once per method
+ * rather than on every call of the proxy. They only depend on the interface, so a descriptor is shared by all the
+ * proxies of a {@link Client}, while the method id handed out by the server is looked up by each proxy's handler
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+final class MethodDescriptor {
+    private final String key;
+    private final long methodHash;
+    private final String declaringClassName;
+    private final String returnTypeName;
+    private final String methodName;
+    private final String[] signature;
+
+    MethodDescriptor(Method method) {
+        this.key = MethodUtil.getMethodKey(method);
+        this.declaringClassName = method.getDeclaringClass().getName();
+        this.returnTypeName = method.getReturnType().getName();
+        this.methodName = method.getName();
+        this.signature = MethodUtil.getSignature(method);
+        this.methodHash = MethodUtil.getSignatureHash(returnTypeName, methodName, signature);
+    }
+
+    /**
+     * Get the key of the method in the method table sent by the server at lookup
+     *
+     * @return the method key
+     */
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * Get the signature hash sent with the method id so that the server can check that the id means the same method
+     *
+     * @return the signature hash
+     */
+    long getMethodHash() {
+        return methodHash;
+    }
+
+    String getDeclaringClassName() {
+        return declaringClassName;
+    }
+
+    String getReturnTypeName() {
+        return returnTypeName;
+    }
+
+    String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * Get the names of the parameter types. The array is shared by all invocations of the method, so it must not be modified
+     *
+     * @return the parameter type names
+     */
+    String[] getSignature() {
+        return signature;
+    }
+}
@@ -23,8 +23,6 @@ package org.jboss.as.remote.jmx.client;
 
 import java.lang.reflect.Method;
 
-import org.jboss.as.remote.jmx.common.MethodUtil;
-
 public class StatefulBeanHandler extends ClientBeanHandler {
     private static final long serialVersionUID = 1L;
     private static final String[] INVOKE_SIGNATURE = new String[] {String.class.getName(), String.class.getName(), String.class.getName(), String.class.getName(), Long.TYPE.getName(), String[].class.getName(), Object[].class.getName()};
@@ -36,10 +34,24 @@ public class StatefulBeanHandler extends ClientBeanHandler {
         this.sessionId = sessionId;
     }
 
+    public StatefulBeanHandler(String name, int nameId, long instanceId, long sessionId, String[] methodKeys) {
+        super(name, nameId, instanceId, methodKeys);
+        this.sessionId = sessionId;
+    }
+
+    @Override
+    long getSessionId() {
+        return sessionId;
+    }
+
     @Override
     Object doInvoke(Object proxy, Client client, String name, Method method, Object[] args) throws Throwable {
-        String[] sig = MethodUtil.getSignature(method);
-        return client.getConnection().invoke(client.getAppMBeanName(), "invokeStateful", new Object[] {name, method.getDeclaringClass().getName(),method.getReturnType().getName(),  method.getName(), sessionId, sig, args}, INVOKE_SIGNATURE);
+        client.checkSession(name, sessionId, getVersion());
+        if (isEnvelopeSupported()) {
+            return client.invoke(createInvocation(method, args));
+        }
+        MethodDescriptor descriptor = getDescriptor(method);
+        return client.invokeOperation("invokeStateful", new Object[] {name, descriptor.getDeclaringClassName(), descriptor.getReturnTypeName(), descriptor.getMethodName(), sessionId, descriptor.getSignature(), args}, INVOKE_SIGNATURE);
     }
 
 }
\ No newline at end of file
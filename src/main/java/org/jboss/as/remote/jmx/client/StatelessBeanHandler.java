@@ -23,8 +23,6 @@ package org.jboss.as.remote.jmx.client;
 
 import java.lang.reflect.Method;
 
-import org.jboss.as.remote.jmx.common.MethodUtil;
-
 public class StatelessBeanHandler extends ClientBeanHandler {
     private static final long serialVersionUID = 1L;
     private static final String[] INVOKE_SIGNATURE = new String[] {String.class.getName(), String.class.getName(), String.class.getName(), String.class.getName(), String[].class.getName(), Object[].class.getName()};
@@ -33,10 +31,17 @@ public class StatelessBeanHandler extends ClientBeanHandler {
         super(name);
     }
 
+    public StatelessBeanHandler(String name, int nameId, long instanceId, String[] methodKeys) {
+        super(name, nameId, instanceId, methodKeys);
+    }
+
     @Override
     Object doInvoke(Object proxy, Client client, String name, Method method, Object[] args) throws Throwable {
-        String[] sig = MethodUtil.getSignature(method);
-        return client.getConnection().invoke(client.getAppMBeanName(), "invokeStateless", new Object[] {name, method.getDeclaringClass().getName(), method.getReturnType().getName(), method.getName(), sig, args}, INVOKE_SIGNATURE);
+        if (isEnvelopeSupported()) {
+            return client.invoke(createInvocation(method, args));
+        }
+        MethodDescriptor descriptor = getDescriptor(method);
+        return client.invokeOperation("invokeStateless", new Object[] {name, descriptor.getDeclaringClassName(), descriptor.getReturnTypeName(), descriptor.getMethodName(), descriptor.getSignature(), args}, INVOKE_SIGNATURE);
     }
 
 }
\ No newline at end of file
@@ -38,43 +38,124 @@ import java.util.Map;
  * A short-lived index of all the declared fields and methods of a class.
  * <p/>
  * The ClassReflectionIndex is only available during the deployment.
- * This is a copy of the one in the AS source to avoid having to import modules from the sar containg the mbean
+ * This is a copy of the one in the AS source to avoid having to import modules from the sar containg the mbean.
+ * Unlike the original the fields, constructors and methods are only indexed once they are asked for.
  *
  * @param <T> the type being indexed
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 final class ClassReflectionIndex<T> {
+    private static final MethodEntry[] NO_METHODS = new MethodEntry[0];
+
     private final Class<T> indexedClass;
-    private final Map<String, Field> fields;
-    private final Map<ParamList, Constructor<T>> constructors;
-    private final Map<ParamNameList, Constructor<T>> constructorsByTypeName;
-    private final Map<String, Map<ParamList, Map<Class<?>, Method>>> methods;
-    private final Map<String, Map<ParamNameList, Map<String, Method>>> methodsByTypeName;
+    //Each section is built the first time it is used. Racing threads may each build one, which is harmless
+    private volatile Map<String, Field> fields;
+    private volatile Map<ParamList, Constructor<T>> constructors;
+    private volatile Map<ParamNameList, Constructor<T>> constructorsByTypeName;
+    private volatile Method[] declaredMethods;
+    private volatile Map<String, Map<ParamList, Map<Class<?>, Method>>> methods;
+    private volatile Map<String, MethodEntry[]> methodsByTypeName;
+    private volatile SignatureLookup methodsBySignatureHash;
 
-    @SuppressWarnings({"unchecked"})
     ClassReflectionIndex(final Class<T> indexedClass, final DeploymentReflectionIndex deploymentReflectionIndex) {
         this.indexedClass = indexedClass;
-        // -- fields --
-        final Field[] declaredFields = indexedClass.getDeclaredFields();
-        final Map<String, Field> fields = new HashMap<String, Field>();
-        for (Field field : declaredFields) {
-            field.setAccessible(true);
-            fields.put(field.getName(), field);
-        }
-        this.fields = fields;
-        // -- methods --
-        final Method[] declaredMethods = indexedClass.getDeclaredMethods();
-        final Map<String, Map<ParamList, Map<Class<?>, Method>>> methods = new HashMap<String, Map<ParamList, Map<Class<?>, Method>>>();
-        final Map<String, Map<ParamNameList, Map<String, Method>>> methodsByTypeName = new HashMap<String, Map<ParamNameList, Map<String, Method>>>();
-        for (Method method : declaredMethods) {
-            method.setAccessible(true);
-            addMethod(methods, method);
-            addMethodByTypeName(methodsByTypeName, method);
-        }
-
-        this.methods = methods;
-        this.methodsByTypeName = methodsByTypeName;
-        // -- constructors --
+    }
+
+    private Map<String, Field> fields() {
+        Map<String, Field> fields = this.fields;
+        if (fields == null) {
+            final Field[] declaredFields = indexedClass.getDeclaredFields();
+            fields = new HashMap<String, Field>();
+            for (Field field : declaredFields) {
+                field.setAccessible(true);
+                fields.put(field.getName(), field);
+            }
+            this.fields = fields;
+        }
+        return fields;
+    }
+
+    /**
+     * Gets the declared methods, made accessible, which both method sections are built from
+     */
+    private Method[] declaredMethods() {
+        Method[] declaredMethods = this.declaredMethods;
+        if (declaredMethods == null) {
+            declaredMethods = indexedClass.getDeclaredMethods();
+            for (Method method : declaredMethods) {
+                method.setAccessible(true);
+            }
+            this.declaredMethods = declaredMethods;
+        }
+        return declaredMethods;
+    }
+
+    private Map<String, Map<ParamList, Map<Class<?>, Method>>> methods() {
+        Map<String, Map<ParamList, Map<Class<?>, Method>>> methods = this.methods;
+        if (methods == null) {
+            methods = new HashMap<String, Map<ParamList, Map<Class<?>, Method>>>();
+            for (Method method : declaredMethods()) {
+                addMethod(methods, method);
+            }
+            this.methods = methods;
+        }
+        return methods;
+    }
+
+    private Map<String, MethodEntry[]> methodsByTypeName() {
+        Map<String, MethodEntry[]> methodsByTypeName = this.methodsByTypeName;
+        if (methodsByTypeName == null) {
+            methodsByTypeName = new HashMap<String, MethodEntry[]>();
+            for (Method method : declaredMethods()) {
+                addMethodByTypeName(methodsByTypeName, method);
+            }
+            this.methodsByTypeName = methodsByTypeName;
+        }
+        return methodsByTypeName;
+    }
+
+    private SignatureLookup methodsBySignatureHash() {
+        SignatureLookup lookup = this.methodsBySignatureHash;
+        if (lookup == null) {
+            int size = 0;
+            for (MethodEntry[] entries : methodsByTypeName().values()) {
+                size += entries.length;
+            }
+            final MethodEntry[] entries = new MethodEntry[size];
+            final long[] hashes = new long[size];
+            int i = 0;
+            for (MethodEntry[] nameEntries : methodsByTypeName().values()) {
+                for (MethodEntry entry : nameEntries) {
+                    entries[i] = entry;
+                    hashes[i] = MethodUtil.getSignatureHash(entry.returnType, entry.method.getName(), entry.paramTypeNames);
+                    i++;
+                }
+            }
+            this.methodsBySignatureHash = lookup = new SignatureLookup(new SignatureIndex(hashes), entries);
+        }
+        return lookup;
+    }
+
+    private Map<ParamList, Constructor<T>> constructors() {
+        Map<ParamList, Constructor<T>> constructors = this.constructors;
+        if (constructors == null) {
+            indexConstructors();
+            constructors = this.constructors;
+        }
+        return constructors;
+    }
+
+    private Map<ParamNameList, Constructor<T>> constructorsByTypeName() {
+        Map<ParamNameList, Constructor<T>> constructorsByTypeName = this.constructorsByTypeName;
+        if (constructorsByTypeName == null) {
+            indexConstructors();
+            constructorsByTypeName = this.constructorsByTypeName;
+        }
+        return constructorsByTypeName;
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private void indexConstructors() {
         final Constructor<T>[] declaredConstructors = (Constructor<T>[]) indexedClass.getDeclaredConstructors();
         final Map<ParamNameList, Constructor<T>> constructorsByTypeName = new HashMap<ParamNameList, Constructor<T>>();
         final Map<ParamList, Constructor<T>> constructors = new HashMap<ParamList, Constructor<T>>();
@@ -109,34 +190,37 @@ final class ClassReflectionIndex<T> {
         }
     }
 
-    private static void addMethodByTypeName(Map<String, Map<ParamNameList, Map<String, Method>>> methodsByTypeName, Method method) {
+    private static void addMethodByTypeName(Map<String, MethodEntry[]> methodsByTypeName, Method method) {
         final String name = method.getName();
-        Map<ParamNameList, Map<String, Method>> nameMap = methodsByTypeName.get(name);
-        if (nameMap == null) {
-            methodsByTypeName.put(name, nameMap = new HashMap<ParamNameList, Map<String, Method>>());
+        MethodEntry[] entries = methodsByTypeName.get(name);
+        if (entries == null) {
+            entries = NO_METHODS;
         }
-        final Class<?>[] types = method.getParameterTypes();
-        final ParamNameList list = createParamNameList(types);
-        Map<String, Method> paramsMap = nameMap.get(list);
-        if (paramsMap == null) {
-            nameMap.put(list, paramsMap = new HashMap<String, Method>());
+        final MethodEntry entry = new MethodEntry(method);
+        //don't allow superclass / interface methods to overwrite existing methods
+        for (MethodEntry existing : entries) {
+            if (existing.matches(entry.returnType, entry.paramTypeNames)) {
+                return;
+            }
         }
+        entries = Arrays.copyOf(entries, entries.length + 1);
+        entries[entries.length - 1] = entry;
+        methodsByTypeName.put(name, entries);
+    }
 
-        //don't allow superclass / interface methods to overwrite existing methods
-        if (!paramsMap.containsKey(method.getReturnType().getName())) {
-            paramsMap.put(method.getReturnType().getName(), method);
+    private static String[] getTypeNames(final Class<?>[] types) {
+        String[] strings = new String[types.length];
+        for (int i = 0; i < types.length; i++) {
+            strings[i] = types[i].getName();
         }
+        return strings;
     }
 
     private static ParamNameList createParamNameList(final Class<?>[] types) {
         if (types == null || types.length == 0) {
             return EMPTY_NAMES;
         }
-        String[] strings = new String[types.length];
-        for (int i = 0; i < types.length; i++) {
-            strings[i] = types[i].getName();
-        }
-        return new ParamNameList(strings);
+        return new ParamNameList(getTypeNames(types));
     }
 
     private static ParamNameList createParamNameList(final String[] typeNames) {
@@ -163,7 +247,7 @@ final class ClassReflectionIndex<T> {
      * @return the field, or {@code null} if no field of that name exists
      */
     public Field getField(String name) {
-        return fields.get(name);
+        return fields().get(name);
     }
 
     /**
@@ -172,7 +256,7 @@ final class ClassReflectionIndex<T> {
      * @return The (possibly empty) collection of all declared fields on this object
      */
     public Collection<Field> getFields() {
-        return Collections.unmodifiableCollection(fields.values());
+        return Collections.unmodifiableCollection(fields().values());
     }
 
     /**
@@ -184,7 +268,7 @@ final class ClassReflectionIndex<T> {
      * @return the method, or {@code null} if no method of that description exists
      */
     public Method getMethod(Class<?> returnType, String name, Class<?>... paramTypes) {
-        final Map<ParamList, Map<Class<?>, Method>> nameMap = methods.get(name);
+        final Map<ParamList, Map<Class<?>, Method>> nameMap = methods().get(name);
         if (nameMap == null) {
             return null;
         }
@@ -214,15 +298,39 @@ final class ClassReflectionIndex<T> {
      * @return the method, or {@code null} if no method of that description exists
      */
     public Method getMethod(String returnType, String name, String... paramTypeNames) {
-        final Map<ParamNameList, Map<String, Method>> nameMap = methodsByTypeName.get(name);
-        if (nameMap == null) {
+        final MethodEntry[] entries = methodsByTypeName().get(name);
+        if (entries == null) {
             return null;
         }
-        final Map<String, Method> paramsMap = nameMap.get(createParamNameList(paramTypeNames));
-        if (paramsMap == null) {
+        for (MethodEntry entry : entries) {
+            if (entry.matches(returnType, paramTypeNames)) {
+                return entry.method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get a method declared on this object, using the signature hash computed by the caller to find it without
+     * allocating anything.
+     *
+     * @param signatureHash  the hash of the signature, see {@link MethodUtil#getSignatureHash(String, String, String[])}
+     * @param returnType     the method return type name
+     * @param name           the name of the method
+     * @param paramTypeNames the parameter type names of the method
+     * @return the method, or {@code null} if no method of that description exists
+     */
+    public Method getMethod(long signatureHash, String returnType, String name, String... paramTypeNames) {
+        final SignatureLookup lookup = methodsBySignatureHash();
+        final int position = lookup.index.get(signatureHash);
+        if (position == SignatureIndex.AMBIGUOUS) {
+            return getMethod(returnType, name, paramTypeNames);
+        }
+        if (position == SignatureIndex.NOT_FOUND) {
             return null;
         }
-        return paramsMap.get(returnType);
+        final MethodEntry entry = lookup.entries[position];
+        return entry.method.getName().equals(name) && entry.matches(returnType, paramTypeNames) ? entry.method : null;
     }
 
     /**
@@ -252,7 +360,7 @@ final class ClassReflectionIndex<T> {
      * @return the (possibly empty) collection of methods matching the description
      */
     public Collection<Method> getMethods(String name, Class<?>... paramTypes) {
-        final Map<ParamList, Map<Class<?>, Method>> nameMap = methods.get(name);
+        final Map<ParamList, Map<Class<?>, Method>> nameMap = methods().get(name);
         if (nameMap == null) {
             return Collections.emptySet();
         }
@@ -271,15 +379,17 @@ final class ClassReflectionIndex<T> {
      * @return the (possibly empty) collection of methods matching the description
      */
     public Collection<Method> getMethods(String name, String... paramTypeNames) {
-        final Map<ParamNameList, Map<String, Method>> nameMap = methodsByTypeName.get(name);
-        if (nameMap == null) {
+        final MethodEntry[] entries = methodsByTypeName().get(name);
+        if (entries == null) {
             return Collections.emptySet();
         }
-        final Map<String, Method> paramsMap = nameMap.get(createParamNameList(paramTypeNames));
-        if (paramsMap == null) {
-            return Collections.emptySet();
+        final Collection<Method> methods = new ArrayList<Method>();
+        for (MethodEntry entry : entries) {
+            if (entry.matchesParams(paramTypeNames)) {
+                methods.add(entry.method);
+            }
         }
-        return Collections.unmodifiableCollection(paramsMap.values());
+        return methods;
     }
 
     /**
@@ -289,7 +399,7 @@ final class ClassReflectionIndex<T> {
      * @return the (possibly empty) collection of methods with the given name
      */
     public Collection<Method> getAllMethods(String name) {
-        final Map<ParamList, Map<Class<?>, Method>> nameMap = methods.get(name);
+        final Map<ParamList, Map<Class<?>, Method>> nameMap = methods().get(name);
         if (nameMap == null) {
             return Collections.emptySet();
         }
@@ -308,7 +418,7 @@ final class ClassReflectionIndex<T> {
      * @return the (possibly empty) collection of methods with the given name and parameter count
      */
     public Collection<Method> getAllMethods(String name, int paramCount) {
-        final Map<ParamList, Map<Class<?>, Method>> nameMap = methods.get(name);
+        final Map<ParamList, Map<Class<?>, Method>> nameMap = methods().get(name);
         if (nameMap == null) {
             return Collections.emptySet();
         }
@@ -324,16 +434,16 @@ final class ClassReflectionIndex<T> {
     }
 
     /**
-     * Get a collection of methods declared on this object.
+     * Get a collection of methods declared on this object. Built from the lookup by type name, so that the
+     * Class-keyed maps are only built once a method is looked up by its parameter classes.
      *
      * @return the (possibly empty) collection of all declared methods
      */
     public Collection<Method> getMethods() {
         final Collection<Method> methods = new ArrayList<Method>();
-        for (Map.Entry<String, Map<ParamList, Map<Class<?>, Method>>> entry : this.methods.entrySet()) {
-            final Map<ParamList, Map<Class<?>, Method>> nameMap = entry.getValue();
-            for (Map<Class<?>, Method> map : nameMap.values()) {
-                methods.addAll(map.values());
+        for (MethodEntry[] entries : methodsByTypeName().values()) {
+            for (MethodEntry entry : entries) {
+                methods.add(entry.method);
             }
         }
         return methods;
@@ -345,7 +455,7 @@ final class ClassReflectionIndex<T> {
      * @return the constructors
      */
     public Collection<Constructor<T>> getConstructors() {
-        return Collections.unmodifiableCollection(constructors.values());
+        return Collections.unmodifiableCollection(constructors().values());
     }
 
     /**
@@ -355,7 +465,7 @@ final class ClassReflectionIndex<T> {
      * @return the constructor, or {@code null} of no such constructor exists
      */
     public Constructor<T> getConstructor(Class<?>... paramTypes) {
-        return constructors.get(createParamList(paramTypes));
+        return constructors().get(createParamList(paramTypes));
     }
 
     /**
@@ -365,7 +475,44 @@ final class ClassReflectionIndex<T> {
      * @return the constructor, or {@code null} of no such constructor exists
      */
     public Constructor<T> getConstructor(String... paramTypeNames) {
-        return constructorsByTypeName.get(createParamNameList(paramTypeNames));
+        return constructorsByTypeName().get(createParamNameList(paramTypeNames));
+    }
+
+    /**
+     * A method along with the names of its return and parameter types, so that looking it up by type names
+     * allocates nothing
+     */
+    private static final class MethodEntry {
+        private final Method method;
+        private final String returnType;
+        private final String[] paramTypeNames;
+
+        MethodEntry(final Method method) {
+            this.method = method;
+            this.returnType = method.getReturnType().getName();
+            this.paramTypeNames = getTypeNames(method.getParameterTypes());
+        }
+
+        boolean matches(String returnType, String[] paramTypeNames) {
+            return this.returnType.equals(returnType) && matchesParams(paramTypeNames);
+        }
+
+        boolean matchesParams(String[] paramTypeNames) {
+            if (paramTypeNames == null || paramTypeNames.length == 0) {
+                return this.paramTypeNames.length == 0;
+            }
+            return Arrays.equals(this.paramTypeNames, paramTypeNames);
+        }
+    }
+
+    private static final class SignatureLookup {
+        private final SignatureIndex index;
+        private final MethodEntry[] entries;
+
+        SignatureLookup(final SignatureIndex index, final MethodEntry[] entries) {
+            this.index = index;
+            this.entries = entries;
+        }
     }
 
     private static final class ParamList {
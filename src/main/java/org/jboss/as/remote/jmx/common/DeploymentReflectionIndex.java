@@ -23,17 +23,24 @@
 package org.jboss.as.remote.jmx.common;
 
 import java.security.Permission;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A reflection index for a deployment.
- * This is a copy of the one in the AS source to avoid having to import modules from the sar containg the mbean
+ * This is a copy of the one in the AS source to avoid having to import modules from the sar containg the mbean.
+ * <p>
+ * The indexes are kept in a segment per class loader, so that the ones for a redeployed class loader can be dropped
+ * with {@link #removeClassLoader(ClassLoader)} rather than pinning it. Getting an index only blocks while another thread
+ * is building the index for the same class.
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 public final class DeploymentReflectionIndex {
-    private final Map<Class<?>, ClassReflectionIndex<?>> classes = new HashMap<Class<?>, ClassReflectionIndex<?>>();
+    //ConcurrentHashMap does not allow null keys, so this stands in for the bootstrap class loader
+    private static final Object BOOTSTRAP_LOADER = new Object();
+
+    private final ConcurrentMap<Object, ConcurrentMap<Class<?>, IndexHolder<?>>> segments = new ConcurrentHashMap<Object, ConcurrentMap<Class<?>, IndexHolder<?>>>();
 
     DeploymentReflectionIndex() {
     }
@@ -60,15 +67,74 @@ public final class DeploymentReflectionIndex {
      * @return the index
      */
     @SuppressWarnings({"unchecked"})
-    public synchronized <T> ClassReflectionIndex<T> getClassIndex(Class<T> clazz) {
-        try {
-            ClassReflectionIndex<T> index = (ClassReflectionIndex<T>) classes.get(clazz);
+    public <T> ClassReflectionIndex<T> getClassIndex(Class<T> clazz) {
+        ConcurrentMap<Class<?>, IndexHolder<?>> segment = getSegment(clazz.getClassLoader());
+        IndexHolder<T> holder = (IndexHolder<T>) segment.get(clazz);
+        if (holder == null) {
+            holder = new IndexHolder<T>(clazz);
+            IndexHolder<T> existing = (IndexHolder<T>) segment.putIfAbsent(clazz, holder);
+            if (existing != null) {
+                holder = existing;
+            }
+        }
+        return holder.get(this);
+    }
+
+    /**
+     * Drops the indexes of all classes loaded by a class loader, e.g. once the deployment it belongs to has been undeployed
+     *
+     * @param loader the class loader
+     */
+    public void removeClassLoader(ClassLoader loader) {
+        segments.remove(loader == null ? BOOTSTRAP_LOADER : loader);
+    }
+
+    /**
+     * Drops all the indexes
+     */
+    public void clear() {
+        segments.clear();
+    }
+
+    private ConcurrentMap<Class<?>, IndexHolder<?>> getSegment(ClassLoader loader) {
+        Object key = loader == null ? BOOTSTRAP_LOADER : loader;
+        ConcurrentMap<Class<?>, IndexHolder<?>> segment = segments.get(key);
+        if (segment == null) {
+            segment = new ConcurrentHashMap<Class<?>, IndexHolder<?>>();
+            ConcurrentMap<Class<?>, IndexHolder<?>> existing = segments.putIfAbsent(key, segment);
+            if (existing != null) {
+                segment = existing;
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Builds the index of a class the first time it is needed
+     */
+    private static final class IndexHolder<T> {
+        private final Class<T> clazz;
+        private volatile ClassReflectionIndex<T> index;
+
+        IndexHolder(Class<T> clazz) {
+            this.clazz = clazz;
+        }
+
+        ClassReflectionIndex<T> get(DeploymentReflectionIndex deploymentIndex) {
+            ClassReflectionIndex<T> index = this.index;
             if (index == null) {
-                classes.put(clazz, index = new ClassReflectionIndex<T>(clazz, this));
+                synchronized (this) {
+                    index = this.index;
+                    if (index == null) {
+                        try {
+                            this.index = index = new ClassReflectionIndex<T>(clazz, deploymentIndex);
+                        } catch (Throwable e) {
+                            throw new RuntimeException("Error getting reflective information for class " + clazz, e);
+                        }
+                    }
+                }
             }
             return index;
-        } catch (Throwable e) {
-            throw new RuntimeException("Error getting reflective information for class " + clazz, e);
         }
     }
 }
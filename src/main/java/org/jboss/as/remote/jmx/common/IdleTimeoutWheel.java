@@ -0,0 +1,165 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.remote.jmx.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hashed timer wheel used to expire items which have been idle for too long.
+ * <p/>
+ * Items are placed in the bucket for the tick of their deadline. Accessing an item does not touch the wheel, instead
+ * the deadline is checked again via the {@link Listener} when the bucket comes up, and items that have been used in
+ * the meantime are moved to the bucket for their new deadline. So the cost of {@link #expire(long)} is proportional
+ * to the number of items which are due rather than the total number of items.
+ *
+ * @param <T> the type of the items
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public final class IdleTimeoutWheel<T> {
+
+    /**
+     * Callback used by the wheel to get the current deadline of an item and to expire it
+     */
+    public interface Listener<T> {
+        /**
+         * Gets the time at which an item should expire
+         *
+         * @param item the item
+         * @return the deadline in milliseconds, or {@code -1} if the item should no longer be tracked
+         */
+        long getDeadline(T item);
+
+        /**
+         * Called when an item has passed its deadline
+         *
+         * @param item the item
+         */
+        void expired(T item);
+    }
+
+    private final long tickMillis;
+    private final List<T>[] buckets;
+    private final int mask;
+    private final Listener<T> listener;
+    private long currentTick;
+
+    /**
+     * Construct a new instance
+     *
+     * @param tickMillis the duration of each tick in milliseconds
+     * @param size the number of buckets, rounded up to a power of two
+     * @param listener the listener
+     * @param now the current time in milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    public IdleTimeoutWheel(long tickMillis, int size, Listener<T> listener, long now) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive");
+        }
+        int capacity = 1;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        this.tickMillis = tickMillis;
+        this.buckets = (List<T>[])new List<?>[capacity];
+        this.mask = capacity - 1;
+        this.listener = listener;
+        this.currentTick = now / tickMillis;
+    }
+
+    /**
+     * Gets the duration of each tick
+     *
+     * @return the tick in milliseconds
+     */
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Adds an item to the wheel
+     *
+     * @param item the item
+     * @param deadline the time in milliseconds at which the item should expire unless it is used again
+     */
+    public synchronized void add(T item, long deadline) {
+        long tick = Math.max(deadline / tickMillis, currentTick + 1);
+        int index = (int)(tick & mask);
+        List<T> bucket = buckets[index];
+        if (bucket == null) {
+            buckets[index] = bucket = new ArrayList<T>();
+        }
+        bucket.add(item);
+    }
+
+    /**
+     * Advances the wheel, expiring all the items whose deadline has passed
+     *
+     * @param now the current time in milliseconds
+     * @return the number of expired items
+     */
+    public int expire(long now) {
+        List<T> due = new ArrayList<T>();
+        synchronized (this) {
+            final long target = now / tickMillis;
+            //If we have fallen behind by more than a whole revolution, each bucket only needs visiting once
+            long tick = Math.max(currentTick, target - buckets.length);
+            while (tick < target) {
+                tick++;
+                int index = (int)(tick & mask);
+                List<T> bucket = buckets[index];
+                if (bucket != null) {
+                    due.addAll(bucket);
+                    buckets[index] = null;
+                }
+            }
+            currentTick = target;
+        }
+
+        int expired = 0;
+        for (T item : due) {
+            long deadline = listener.getDeadline(item);
+            if (deadline < 0) {
+                continue;
+            }
+            if (deadline <= now) {
+                listener.expired(item);
+                expired++;
+            } else {
+                add(item, deadline);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Removes all items from the wheel
+     */
+    public synchronized void clear() {
+        for (int i = 0 ; i < buckets.length ; i++) {
+            buckets[i] = null;
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.common;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * A single invocation on a stateless or stateful session bean.
+ * <p/>
+ * Since there are a lot of these, and the arguments are usually small, it is written in a compact binary form rather
+ * than using default serialization. The bean is identified by the name id handed out by the server at lookup,
+ * the method by its id in the method table, integer lengths are written as varints, and arguments of
+ * common types are written directly without going through {@link ObjectOutput#writeObject(Object)}.
+ * <p/>
+ * A method id is always sent together with the signature hash of the method (see
+ * {@link MethodUtil#getSignatureHash(String, String, String[])}), so that the server can tell if the id refers to a
+ * different method than the client thinks. Likewise, the name and method ids are only valid within the MBean
+ * instance which handed them out, so they are sent together with its instance id. In both cases the server throws a
+ * {@link StaleIdException}, and the client resends the invocation from {@link #withoutIds()}.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public final class Invocation implements Externalizable {
+    private static final long serialVersionUID = 1L;
+
+    /** The session id used for invocations on stateless session beans, session ids are never {@code 0} */
+    public static final long NO_SESSION = 0;
+
+    private static final int FLAG_STATEFUL = 1;
+    private static final int FLAG_METHOD_ID = 1 << 1;
+    private static final int FLAG_NAME_ID = 1 << 2;
+    private static final int FLAG_ARGS = 1 << 3;
+
+    private static final int ARG_NULL = 0;
+    private static final int ARG_OBJECT = 1;
+    private static final int ARG_TRUE = 2;
+    private static final int ARG_FALSE = 3;
+    private static final int ARG_INT = 4;
+    private static final int ARG_LONG = 5;
+    private static final int ARG_DOUBLE = 6;
+    private static final int ARG_STRING = 7;
+    private static final int ARG_BYTES = 8;
+    private static final int ARG_SHORT = 9;
+    private static final int ARG_BYTE = 10;
+    private static final int ARG_FLOAT = 11;
+    private static final int ARG_CHAR = 12;
+
+    //writeUTF() cannot write strings longer than this in the worst case
+    private static final int MAX_UTF_CHARS = 0xFFFF / 3;
+
+    private String name;
+    private int nameId = -1;
+    private long instanceId;
+    private long sessionId;
+    private int methodId = -1;
+    private long methodHash;
+    private String returnType;
+    private String methodName;
+    private String[] sig;
+    private Object[] args;
+
+    /**
+     * For deserialization only
+     */
+    public Invocation() {
+    }
+
+    private Invocation(String name, int nameId, long instanceId, long sessionId, int methodId, long methodHash, String returnType, String methodName, String[] sig, Object[] args) {
+        this.name = name;
+        this.nameId = nameId;
+        this.instanceId = instanceId;
+        this.sessionId = sessionId;
+        this.methodId = methodId;
+        this.methodHash = methodHash;
+        this.returnType = returnType;
+        this.methodName = methodName;
+        this.sig = sig;
+        this.args = args;
+    }
+
+    /**
+     * Creates an invocation of a method from the method table returned at lookup. The signature of the method is
+     * not sent, it is only kept for {@link #withoutIds()}
+     *
+     * @param name the JNDI name of the bean
+     * @param nameId the id of the name handed out at lookup, or {@code -1} to send the name instead
+     * @param instanceId the instance id of the MBean which handed out the ids at lookup
+     * @param sessionId the session id of a stateful session bean, or {@link #NO_SESSION}
+     * @param methodId the id of the method in the method table
+     * @param methodHash the signature hash of the method, see {@link MethodUtil#getSignatureHash(String, String, String[])}
+     * @param returnType the return type of the method
+     * @param methodName the name of the method
+     * @param sig the array of the jvm signature of each parameter
+     * @param args the actual arguments used for calling the method
+     */
+    public static Invocation create(String name, int nameId, long instanceId, long sessionId, int methodId, long methodHash, String returnType, String methodName, String[] sig, Object[] args) {
+        return new Invocation(name, nameId, instanceId, sessionId, methodId, methodHash, returnType, methodName, sig, args);
+    }
+
+    /**
+     * Creates an invocation of a method identified by its signature
+     *
+     * @param name the JNDI name of the bean
+     * @param nameId the id of the name handed out at lookup, or {@code -1} to send the name instead
+     * @param instanceId the instance id of the MBean which handed out the name id at lookup, ignored if there is no name id
+     * @param sessionId the session id of a stateful session bean, or {@link #NO_SESSION}
+     * @param returnType the return type of the method
+     * @param methodName the name of the method
+     * @param sig the array of the jvm signature of each parameter
+     * @param args the actual arguments used for calling the method
+     */
+    public static Invocation create(String name, int nameId, long instanceId, long sessionId, String returnType, String methodName, String[] sig, Object[] args) {
+        return new Invocation(name, nameId, instanceId, sessionId, -1, 0, returnType, methodName, sig, args);
+    }
+
+    /**
+     * Gets a copy of this invocation which identifies the bean by its name and the method by its signature, to
+     * resend it after the server rejected the ids with a {@link StaleIdException}
+     *
+     * @return the copy, or this invocation if it does not use any ids
+     * @throws IllegalStateException if this invocation was received from the other side with only the ids
+     */
+    public Invocation withoutIds() {
+        if (!hasIds()) {
+            return this;
+        }
+        if (name == null || methodName == null) {
+            throw new IllegalStateException("The name and signature of the method are not known");
+        }
+        return new Invocation(name, -1, 0, sessionId, -1, 0, returnType, methodName, sig, args);
+    }
+
+    /**
+     * Get the JNDI name of the bean
+     *
+     * @return the name, or {@code null} if the invocation was received with only the name id
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the name id
+     *
+     * @return the name id, or {@code -1} if the bean is identified by its name
+     */
+    public int getNameId() {
+        return nameId;
+    }
+
+    /**
+     * Get the instance id of the MBean which handed out the ids used by this invocation
+     *
+     * @return the instance id, only meaningful if there is a name or method id
+     */
+    public long getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * Whether the bean or method is identified by an id, which is only valid within the MBean instance which handed it out
+     *
+     * @return {@code true} if there is a name or method id
+     */
+    public boolean hasIds() {
+        return nameId >= 0 || methodId >= 0;
+    }
+
+    public boolean isStateful() {
+        return sessionId != NO_SESSION;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Get the method id
+     *
+     * @return the method id, or {@code -1} if the method is identified by its signature
+     */
+    public int getMethodId() {
+        return methodId;
+    }
+
+    /**
+     * Get the signature hash of the method the client meant by the method id
+     *
+     * @return the signature hash, only meaningful if there is a method id
+     */
+    public long getMethodHash() {
+        return methodHash;
+    }
+
+    public String getReturnType() {
+        return returnType;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public String[] getSig() {
+        return sig;
+    }
+
+    public Object[] getArgs() {
+        return args;
+    }
+
+    public void writeExternal(ObjectOutput out) throws IOException {
+        int flags = 0;
+        if (sessionId != NO_SESSION) {
+            flags |= FLAG_STATEFUL;
+        }
+        if (methodId >= 0) {
+            flags |= FLAG_METHOD_ID;
+        }
+        if (nameId >= 0) {
+            flags |= FLAG_NAME_ID;
+        }
+        if (args != null) {
+            flags |= FLAG_ARGS;
+        }
+        out.writeByte(flags);
+        if (nameId >= 0) {
+            writeVarInt(out, nameId);
+        } else {
+            out.writeUTF(name);
+        }
+        if (hasIds()) {
+            out.writeLong(instanceId);
+        }
+        if (sessionId != NO_SESSION) {
+            //The ids are random so there is nothing to gain from a varint
+            out.writeLong(sessionId);
+        }
+        if (methodId >= 0) {
+            writeVarInt(out, methodId);
+            out.writeLong(methodHash);
+        } else {
+            out.writeUTF(returnType);
+            out.writeUTF(methodName);
+            writeVarInt(out, sig.length);
+            for (String s : sig) {
+                out.writeUTF(s);
+            }
+        }
+        if (args != null) {
+            writeVarInt(out, args.length);
+            for (Object arg : args) {
+                writeArg(out, arg);
+            }
+        }
+    }
+
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        int flags = in.readUnsignedByte();
+        if ((flags & FLAG_NAME_ID) != 0) {
+            nameId = readVarInt(in);
+        } else {
+            name = in.readUTF();
+        }
+        if ((flags & (FLAG_NAME_ID | FLAG_METHOD_ID)) != 0) {
+            instanceId = in.readLong();
+        }
+        sessionId = (flags & FLAG_STATEFUL) != 0 ? in.readLong() : NO_SESSION;
+        if ((flags & FLAG_METHOD_ID) != 0) {
+            methodId = readVarInt(in);
+            methodHash = in.readLong();
+        } else {
+            returnType = in.readUTF();
+            methodName = in.readUTF();
+            sig = new String[readVarInt(in)];
+            for (int i = 0 ; i < sig.length ; i++) {
+                sig[i] = in.readUTF();
+            }
+        }
+        if ((flags & FLAG_ARGS) != 0) {
+            args = new Object[readVarInt(in)];
+            for (int i = 0 ; i < args.length ; i++) {
+                args[i] = readArg(in);
+            }
+        }
+    }
+
+    private static void writeArg(ObjectOutput out, Object arg) throws IOException {
+        if (arg == null) {
+            out.writeByte(ARG_NULL);
+            return;
+        }
+        //Exact class checks, subclasses of String etc. cannot exist and anything else goes through writeObject()
+        final Class<?> clazz = arg.getClass();
+        if (clazz == Boolean.class) {
+            out.writeByte((Boolean)arg ? ARG_TRUE : ARG_FALSE);
+        } else if (clazz == Integer.class) {
+            out.writeByte(ARG_INT);
+            writeVarLong(out, zigZag((Integer)arg));
+        } else if (clazz == Long.class) {
+            out.writeByte(ARG_LONG);
+            writeVarLong(out, zigZag((Long)arg));
+        } else if (clazz == String.class && ((String)arg).length() <= MAX_UTF_CHARS) {
+            out.writeByte(ARG_STRING);
+            out.writeUTF((String)arg);
+        } else if (clazz == Double.class) {
+            out.writeByte(ARG_DOUBLE);
+            out.writeDouble((Double)arg);
+        } else if (clazz == byte[].class) {
+            byte[] bytes = (byte[])arg;
+            out.writeByte(ARG_BYTES);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        } else if (clazz == Short.class) {
+            out.writeByte(ARG_SHORT);
+            out.writeShort((Short)arg);
+        } else if (clazz == Byte.class) {
+            out.writeByte(ARG_BYTE);
+            out.writeByte((Byte)arg);
+        } else if (clazz == Float.class) {
+            out.writeByte(ARG_FLOAT);
+            out.writeFloat((Float)arg);
+        } else if (clazz == Character.class) {
+            out.writeByte(ARG_CHAR);
+            out.writeChar((Character)arg);
+        } else {
+            out.writeByte(ARG_OBJECT);
+            out.writeObject(arg);
+        }
+    }
+
+    private static Object readArg(ObjectInput in) throws IOException, ClassNotFoundException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case ARG_NULL:
+                return null;
+            case ARG_OBJECT:
+                return in.readObject();
+            case ARG_TRUE:
+                return Boolean.TRUE;
+            case ARG_FALSE:
+                return Boolean.FALSE;
+            case ARG_INT:
+                return (int)unZigZag(readVarLong(in));
+            case ARG_LONG:
+                return unZigZag(readVarLong(in));
+            case ARG_DOUBLE:
+                return in.readDouble();
+            case ARG_STRING:
+                return in.readUTF();
+            case ARG_BYTES: {
+                byte[] bytes = new byte[readVarInt(in)];
+                in.readFully(bytes);
+                return bytes;
+            }
+            case ARG_SHORT:
+                return in.readShort();
+            case ARG_BYTE:
+                return in.readByte();
+            case ARG_FLOAT:
+                return in.readFloat();
+            case ARG_CHAR:
+                return in.readChar();
+            default:
+                throw new IOException("Unknown argument type " + type);
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(ObjectOutput out, int value) throws IOException {
+        if (value < 0) {
+            throw new IOException("Negative length " + value);
+        }
+        writeVarLong(out, value);
+    }
+
+    private static int readVarInt(ObjectInput in) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Bad length " + value);
+        }
+        return (int)value;
+    }
+
+    private static void writeVarLong(ObjectOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int)value);
+    }
+
+    private static long readVarLong(ObjectInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0 ; shift < 64 ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.common;
+
+import java.io.Serializable;
+
+/**
+ * The outcome of an {@link Invocation}, either the returned value or the thrown exception
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public final class InvocationResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Object value;
+    private final Throwable failure;
+
+    private InvocationResult(Object value, Throwable failure) {
+        this.value = value;
+        this.failure = failure;
+    }
+
+    public static InvocationResult success(Object value) {
+        return new InvocationResult(value, null);
+    }
+
+    public static InvocationResult failure(Throwable failure) {
+        return new InvocationResult(null, failure);
+    }
+
+    public boolean isFailure() {
+        return failure != null;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of latencies in nanoseconds with log-linear buckets.
+ * <p/>
+ * Values below {@code 32} have a bucket each, above that each power of two is split into 16 linear sub-buckets,
+ * so the reported percentiles are within about 6% of the recorded values. Values above roughly 68 seconds all go in
+ * the last bucket. There is a histogram per method, so the counts are kept in a single array of about 4KB rather
+ * than striped by thread; different latencies land in different buckets anyway. Only the total, which every
+ * recording thread updates, is striped by thread so that concurrent recording threads rarely write the same
+ * cache line.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + SUB_BUCKETS;
+    private static final int STRIPES;
+    static {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() && stripes < 8) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray totals = new AtomicLongArray(STRIPES * 8);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketIndex(nanos));
+        //The totals of each stripe are a cache line apart
+        final int stripe = (int)Thread.currentThread().getId() & (STRIPES - 1);
+        totals.addAndGet(stripe * 8, nanos);
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Get the number of recorded latencies
+     *
+     * @return the count
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0 ; i < counts.length() ; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Get the sum of all recorded latencies
+     *
+     * @return the sum in nanoseconds
+     */
+    public long getTotal() {
+        long total = 0;
+        for (int stripe = 0 ; stripe < STRIPES ; stripe++) {
+            total += totals.get(stripe * 8);
+        }
+        return total;
+    }
+
+    /**
+     * Get the largest recorded latency
+     *
+     * @return the largest latency in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the latency at a given percentile
+     *
+     * @param percentile the percentile, between {@code 0} and {@code 100}
+     * @return the highest value of the bucket containing the percentile in nanoseconds, or {@code 0} if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Bad percentile " + percentile);
+        }
+        final long[] merged = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0 ; i < BUCKETS ; i++) {
+            merged[i] = counts.get(i);
+            count += merged[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0 ; i < BUCKETS ; i++) {
+            seen += merged[i];
+            if (seen >= rank) {
+                //The last bucket has no upper bound
+                return i == BUCKETS - 1 ? max.get() : Math.min(bucketHighestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears all recorded latencies
+     */
+    public void reset() {
+        for (int i = 0 ; i < counts.length() ; i++) {
+            counts.set(i, 0);
+        }
+        for (int i = 0 ; i < totals.length() ; i++) {
+            totals.set(i, 0);
+        }
+        max.set(0);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int)value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int)(value >>> shift);
+    }
+
+    static long bucketHighestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = index - shift * SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
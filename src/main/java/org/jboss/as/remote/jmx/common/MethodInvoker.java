@@ -0,0 +1,51 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.common;
+
+import java.lang.reflect.Method;
+
+/**
+ * Invokes a resolved bean method. Invokers are created once per method and cached in the {@link MethodTable},
+ * so that anything which can be worked out ahead of time is not repeated on every invocation.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public interface MethodInvoker {
+
+    /**
+     * Get the method invoked
+     *
+     * @return the method
+     */
+    Method getMethod();
+
+    /**
+     * Invokes the method
+     *
+     * @param target the object to invoke the method on
+     * @param args the arguments, may be {@code null} if the method takes no parameters
+     * @return the value returned by the method
+     * @throws java.lang.reflect.InvocationTargetException wrapping the exception thrown by the method, as for {@link Method#invoke(Object, Object...)}
+     */
+    Object invoke(Object target, Object[] args) throws Exception;
+}
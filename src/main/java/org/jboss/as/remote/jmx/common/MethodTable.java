@@ -0,0 +1,195 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.remote.jmx.common;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.ejb.Remove;
+
+/**
+ * A pre-resolved table of the public methods of a bean proxy class, where each method is identified by its index
+ * in the table. The method keys (see {@link MethodUtil#getMethodKey(Method)}) are handed to the client at lookup
+ * so that it can invoke using the compact method id rather than sending the full method signature, and the server
+ * can dispatch without going through the reflection index on every call.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public final class MethodTable {
+    private final Class<?> beanClass;
+    private final String[] keys;
+    private final Method[] methods;
+    private final MethodInvoker[] invokers;
+    private final boolean[] remove;
+    private final long[] hashes;
+    private final SignatureIndex signatureIndex;
+
+    private MethodTable(Class<?> beanClass, String[] keys, Method[] methods, boolean[] remove) {
+        this.beanClass = beanClass;
+        this.keys = keys;
+        this.methods = methods;
+        this.invokers = new MethodInvoker[methods.length];
+        for (int i = 0 ; i < methods.length ; i++) {
+            invokers[i] = MethodUtil.createInvoker(methods[i]);
+        }
+        this.remove = remove;
+        this.hashes = new long[methods.length];
+        for (int i = 0 ; i < methods.length ; i++) {
+            hashes[i] = MethodUtil.getSignatureHash(methods[i]);
+        }
+        this.signatureIndex = new SignatureIndex(hashes);
+    }
+
+    /**
+     * Creates the method table for a bean class
+     *
+     * @param index the reflection index
+     * @param beanClass the class of the bean proxy
+     * @return the method table
+     */
+    public static MethodTable create(DeploymentReflectionIndex index, Class<?> beanClass) {
+        //Sort by key so that the ids are stable for a given class
+        Map<String, Method> sorted = new TreeMap<String, Method>();
+        for (Method method : index.getClassIndex(beanClass).getMethods()) {
+            int modifiers = method.getModifiers();
+            if (Modifier.isPublic(modifiers) && !Modifier.isStatic(modifiers) && !method.isBridge()) {
+                sorted.put(MethodUtil.getMethodKey(method), method);
+            }
+        }
+        final String[] keys = new String[sorted.size()];
+        final Method[] methods = new Method[sorted.size()];
+        final boolean[] remove = new boolean[sorted.size()];
+        int i = 0;
+        for (Map.Entry<String, Method> entry : sorted.entrySet()) {
+            keys[i] = entry.getKey();
+            methods[i] = entry.getValue();
+            remove[i] = methods[i].isAnnotationPresent(Remove.class);
+            i++;
+        }
+        return new MethodTable(beanClass, keys, methods, remove);
+    }
+
+    /**
+     * Get the class of the bean proxy this table was created for
+     *
+     * @return the bean class
+     */
+    public Class<?> getBeanClass() {
+        return beanClass;
+    }
+
+    /**
+     * Get the method keys, where the index of each key is the method id
+     *
+     * @return a copy of the method keys
+     */
+    public String[] getKeys() {
+        return keys.clone();
+    }
+
+    /**
+     * Get the number of methods in the table
+     *
+     * @return the number of methods
+     */
+    public int getMethodCount() {
+        return methods.length;
+    }
+
+    /**
+     * Get a method by its id
+     *
+     * @param methodId the method id
+     * @return the method
+     * @throws IllegalArgumentException if there is no method with the given id
+     */
+    public Method getMethod(int methodId) {
+        if (methodId < 0 || methodId >= methods.length) {
+            throw new IllegalArgumentException("No method with id " + methodId + " in " + beanClass.getName());
+        }
+        return methods[methodId];
+    }
+
+    /**
+     * Get the invoker for a method by its id
+     *
+     * @param methodId the method id
+     * @return the invoker
+     * @throws IllegalArgumentException if there is no method with the given id
+     */
+    public MethodInvoker getInvoker(int methodId) {
+        if (methodId < 0 || methodId >= invokers.length) {
+            throw new IllegalArgumentException("No method with id " + methodId + " in " + beanClass.getName());
+        }
+        return invokers[methodId];
+    }
+
+    /**
+     * Checks that a method id sent by the client identifies the method it meant
+     *
+     * @param methodId the method id
+     * @param signatureHash the signature hash of the method the client meant, see {@link MethodUtil#getSignatureHash(String, String, String[])}
+     * @return {@code true} if there is a method with the given id and signature hash
+     */
+    public boolean isMethod(int methodId, long signatureHash) {
+        return methodId >= 0 && methodId < hashes.length && hashes[methodId] == signatureHash;
+    }
+
+    /**
+     * Gets the id of a method from its signature, without allocating anything
+     *
+     * @param signatureHash the signature hash, see {@link MethodUtil#getSignatureHash(String, String, String[])}
+     * @param returnType the name of the return type
+     * @param name the name of the method
+     * @param sig the names of the parameter types
+     * @return the method id, or {@code -1} if the method is not in the table
+     */
+    public int getMethodId(long signatureHash, String returnType, String name, String[] sig) {
+        int methodId = signatureIndex.get(signatureHash);
+        if (methodId == SignatureIndex.AMBIGUOUS) {
+            for (int i = 0 ; i < keys.length ; i++) {
+                if (MethodUtil.matchesMethodKey(keys[i], returnType, name, sig)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        if (methodId >= 0 && MethodUtil.matchesMethodKey(keys[methodId], returnType, name, sig)) {
+            return methodId;
+        }
+        return -1;
+    }
+
+    /**
+     * Whether the method with the given id is annotated with {@link Remove}
+     *
+     * @param methodId the method id
+     * @return {@code true} if it is a remove method
+     */
+    public boolean isRemove(int methodId) {
+        return remove[methodId];
+    }
+}
@@ -30,6 +30,9 @@ import java.lang.reflect.Method;
  * @version $Revision: 1.1 $
  */
 public class MethodUtil {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
     public static String[] getSignature(Method method) {
         Class<?>[] params = method.getParameterTypes();
         String[] sig = new String[params.length];
@@ -39,8 +42,140 @@ public class MethodUtil {
         return sig;
     }
 
+    /**
+     * Gets a key uniquely identifying a method within a class by its return type, name and parameter types
+     *
+     * @param method the method
+     * @return the key
+     */
+    public static String getMethodKey(Method method) {
+        return getMethodKey(method.getReturnType().getName(), method.getName(), getSignature(method));
+    }
+
+    /**
+     * Gets a key uniquely identifying a method within a class by its return type, name and parameter types
+     *
+     * @param returnType the name of the return type
+     * @param name the name of the method
+     * @param sig the names of the parameter types
+     * @return the key
+     */
+    public static String getMethodKey(String returnType, String name, String[] sig) {
+        StringBuilder sb = new StringBuilder(returnType).append(' ').append(name).append('(');
+        for (int i = 0 ; i < sig.length ; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(sig[i]);
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Gets a 64-bit hash of the method key (see {@link #getMethodKey(String, String, String[])}) without building the key,
+     * used to look methods up without allocating anything
+     *
+     * @param returnType the name of the return type
+     * @param name the name of the method
+     * @param sig the names of the parameter types
+     * @return the hash
+     */
+    public static long getSignatureHash(String returnType, String name, String[] sig) {
+        long h = FNV_OFFSET_BASIS;
+        h = hash(h, returnType);
+        h = hash(h, ' ');
+        h = hash(h, name);
+        h = hash(h, '(');
+        if (sig != null) {
+            for (int i = 0 ; i < sig.length ; i++) {
+                if (i > 0) {
+                    h = hash(h, ',');
+                }
+                h = hash(h, sig[i]);
+            }
+        }
+        h = hash(h, ')');
+        //Spread the bits so that the low bits are good enough for indexing a table
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Gets the signature hash of a method
+     *
+     * @param method the method
+     * @return the hash
+     * @see #getSignatureHash(String, String, String[])
+     */
+    public static long getSignatureHash(Method method) {
+        return getSignatureHash(method.getReturnType().getName(), method.getName(), getSignature(method));
+    }
+
+    /**
+     * Checks whether a method key is the one for a return type, name and parameter types without building the key
+     *
+     * @param key the method key
+     * @param returnType the name of the return type
+     * @param name the name of the method
+     * @param sig the names of the parameter types
+     * @return {@code true} if the key matches
+     */
+    public static boolean matchesMethodKey(String key, String returnType, String name, String[] sig) {
+        int pos = 0;
+        if (!key.startsWith(returnType, pos)) {
+            return false;
+        }
+        pos += returnType.length();
+        if (pos >= key.length() || key.charAt(pos++) != ' ' || !key.startsWith(name, pos)) {
+            return false;
+        }
+        pos += name.length();
+        if (pos >= key.length() || key.charAt(pos++) != '(') {
+            return false;
+        }
+        if (sig != null) {
+            for (int i = 0 ; i < sig.length ; i++) {
+                if (i > 0) {
+                    if (pos >= key.length() || key.charAt(pos++) != ',') {
+                        return false;
+                    }
+                }
+                if (!key.startsWith(sig[i], pos)) {
+                    return false;
+                }
+                pos += sig[i].length();
+            }
+        }
+        return pos == key.length() - 1 && key.charAt(pos) == ')';
+    }
+
+    /**
+     * Creates an invoker for a method
+     *
+     * @param method the method
+     * @return the invoker
+     */
+    public static MethodInvoker createInvoker(Method method) {
+        return new ReflectiveMethodInvoker(method);
+    }
+
     public static Method getMethod(DeploymentReflectionIndex index, Class<?> clazz, String returnType, String name, String[] sig)  throws ClassNotFoundException, NoSuchMethodException {
         ClassReflectionIndex<?> classIndex = index.getClassIndex(clazz);
-        return classIndex.getMethod(returnType, name, sig);
+        return classIndex.getMethod(getSignatureHash(returnType, name, sig), returnType, name, sig);
+    }
+
+    private static long hash(long h, String s) {
+        for (int i = 0 ; i < s.length() ; i++) {
+            h = hash(h, s.charAt(i));
+        }
+        return h;
+    }
+
+    private static long hash(long h, char c) {
+        return (h ^ c) * FNV_PRIME;
     }
 }
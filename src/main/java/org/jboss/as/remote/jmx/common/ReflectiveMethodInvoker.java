@@ -0,0 +1,60 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.common;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * A {@link MethodInvoker} using reflection. The access checks are suppressed once when it is created rather than
+ * checked on each call, and the argument count is checked before going into the reflection machinery.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+final class ReflectiveMethodInvoker implements MethodInvoker {
+    private final Method method;
+    private final int parameterCount;
+
+    ReflectiveMethodInvoker(Method method) {
+        method.setAccessible(true);
+        this.method = method;
+        this.parameterCount = method.getParameterTypes().length;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public Object invoke(Object target, Object[] args) throws Exception {
+        int count = args == null ? 0 : args.length;
+        if (count != parameterCount) {
+            throw new IllegalArgumentException("Expected " + parameterCount + " arguments for " + method + ", got " + (args == null ? "none" : Arrays.toString(args)));
+        }
+        return method.invoke(target, args);
+    }
+
+    @Override
+    public String toString() {
+        return "ReflectiveMethodInvoker[" + method + "]";
+    }
+}
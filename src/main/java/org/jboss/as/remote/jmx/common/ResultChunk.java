@@ -0,0 +1,95 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.common;
+
+import java.io.Serializable;
+
+/**
+ * A chunk of a large result which is held by the server in a cursor and sent to the client a piece at a time.
+ * The first chunk is returned by the invocation in place of the result, and the rest are fetched by the client
+ * using the cursor id
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public final class ResultChunk implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** The cursor id used in the last chunk, since there is nothing left to fetch */
+    public static final long NO_CURSOR = 0;
+
+    private final long cursorId;
+    private final byte[] bytes;
+    private final Object[] elements;
+    private final boolean last;
+
+    private ResultChunk(long cursorId, byte[] bytes, Object[] elements, boolean last) {
+        this.cursorId = last ? NO_CURSOR : cursorId;
+        this.bytes = bytes;
+        this.elements = elements;
+        this.last = last;
+    }
+
+    /**
+     * Creates a chunk of a binary result
+     *
+     * @param cursorId the id of the cursor holding the rest of the result
+     * @param bytes the bytes in this chunk
+     * @param last whether this is the last chunk
+     * @return the chunk
+     */
+    public static ResultChunk bytes(long cursorId, byte[] bytes, boolean last) {
+        return new ResultChunk(cursorId, bytes, null, last);
+    }
+
+    /**
+     * Creates a chunk of a result made up of elements
+     *
+     * @param cursorId the id of the cursor holding the rest of the result
+     * @param elements the elements in this chunk
+     * @param last whether this is the last chunk
+     * @return the chunk
+     */
+    public static ResultChunk elements(long cursorId, Object[] elements, boolean last) {
+        return new ResultChunk(cursorId, null, elements, last);
+    }
+
+    public long getCursorId() {
+        return cursorId;
+    }
+
+    public boolean isBinary() {
+        return bytes != null;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public Object[] getElements() {
+        return elements;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.common;
+
+/**
+ * The types of the notifications sent by the {@link org.jboss.as.remote.jmx.mbean.RemoteViaJMX} MBean. Removed
+ * sessions and changed names are coalesced and sent at most once per notification interval, so a notification may
+ * cover several events.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public final class ServerNotifications {
+
+    /**
+     * Stateful sessions were removed, either by a {@link javax.ejb.Remove} method or for being idle. The user data
+     * is a {@code long[]} of the session ids. Each notification is a {@link SessionsRemovedNotification} for the
+     * sessions of one client, which the client only receives if it subscribes with a {@link SessionOwnerFilter}
+     */
+    public static final String SESSIONS_REMOVED = "org.jboss.as.remote.jmx.sessions.removed";
+
+    /**
+     * Names were added, removed or changed kind. The user data is a {@code String[]} of the names
+     */
+    public static final String NAMES_CHANGED = "org.jboss.as.remote.jmx.names.changed";
+
+    /**
+     * The MBean is stopping, all its stateful sessions and streamed results are discarded. There is no user data
+     */
+    public static final String STOPPING = "org.jboss.as.remote.jmx.stopping";
+
+    private ServerNotifications() {
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.remote.jmx.common;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates session ids which are unique for the lifetime of the generator without needing to check for collisions.
+ * <p/>
+ * Each id is a monotonic counter passed through a bijective mixing function keyed with random values chosen when
+ * the generator is created, so distinct counter values always produce distinct ids, while the ids are neither
+ * sequential nor predictable across generator instances.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public final class SessionIdGenerator {
+    private final AtomicLong counter = new AtomicLong();
+    private final long inputKey;
+    private final long outputKey;
+
+    public SessionIdGenerator() {
+        SecureRandom random = new SecureRandom();
+        inputKey = random.nextLong();
+        outputKey = random.nextLong();
+    }
+
+    /**
+     * Gets the next session id
+     *
+     * @return the session id, never {@code 0}
+     */
+    public long nextId() {
+        long id;
+        do {
+            id = mix(counter.incrementAndGet() ^ inputKey) ^ outputKey;
+        } while (id == 0);
+        return id;
+    }
+
+    private static long mix(long value) {
+        //Each step is invertible, so the function as a whole is a bijection
+        value ^= value >>> 30;
+        value *= 0xbf58476d1ce4e5b9L;
+        value ^= value >>> 27;
+        value *= 0x94d049bb133111ebL;
+        value ^= value >>> 31;
+        return value;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.common;
+
+import javax.management.Notification;
+import javax.management.NotificationFilter;
+
+/**
+ * Passes {@link ServerNotifications#SESSIONS_REMOVED} notifications only on to the client which created the
+ * sessions, along with those whose owner is not known. All other notifications are passed on. The filter is
+ * applied on the server, so the other clients' removed sessions are never sent over the wire.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class SessionOwnerFilter implements NotificationFilter {
+    private static final long serialVersionUID = 1L;
+
+    private final long owner;
+
+    /**
+     * Constructor
+     *
+     * @param owner the id the client passes in when looking up stateful session beans
+     */
+    public SessionOwnerFilter(long owner) {
+        this.owner = owner;
+    }
+
+    public boolean isNotificationEnabled(Notification notification) {
+        if (notification instanceof SessionsRemovedNotification) {
+            long sessionOwner = ((SessionsRemovedNotification)notification).getOwner();
+            return sessionOwner == 0 || sessionOwner == owner;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.remote.jmx.common;
+
+/**
+ * A concurrent map of sessions keyed by primitive {@code long} session ids.
+ * <p/>
+ * The entries are spread across a number of segments, each of which is an open-addressing hash table with its own
+ * lock, so that operations on different sessions rarely contend with each other and the keys are never boxed.
+ *
+ * @param <V> the type of the session
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public final class SessionRegistry<V> {
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+
+    private final Segment<V>[] segments;
+    private final int segmentShift;
+
+    /**
+     * Construct a new instance with a number of segments suitable for the number of available processors
+     */
+    public SessionRegistry() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * Construct a new instance
+     *
+     * @param concurrencyLevel the estimated number of concurrently updating threads, rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public SessionRegistry(int concurrencyLevel) {
+        int count = 1;
+        int bits = 0;
+        while (count < concurrencyLevel && count < (1 << 16)) {
+            count <<= 1;
+            bits++;
+        }
+        segments = (Segment<V>[])new Segment<?>[count];
+        for (int i = 0 ; i < count ; i++) {
+            segments[i] = new Segment<V>();
+        }
+        segmentShift = 64 - bits;
+    }
+
+    /**
+     * Gets a session
+     *
+     * @param id the session id
+     * @return the session or {@code null} if there is none with that id
+     */
+    public V get(long id) {
+        long hash = hash(id);
+        return segmentFor(hash).get(id, hash);
+    }
+
+    /**
+     * Adds a session
+     *
+     * @param id the session id
+     * @param session the session
+     * @return the session previously registered under that id, or {@code null} if there was none
+     */
+    public V put(long id, V session) {
+        if (session == null) {
+            throw new IllegalArgumentException("Null session");
+        }
+        long hash = hash(id);
+        return segmentFor(hash).put(id, hash, session);
+    }
+
+    /**
+     * Removes a session
+     *
+     * @param id the session id
+     * @return the removed session or {@code null} if there was none with that id
+     */
+    public V remove(long id) {
+        long hash = hash(id);
+        return segmentFor(hash).remove(id, hash, null);
+    }
+
+    /**
+     * Removes a session if it is still registered under the given id
+     *
+     * @param id the session id
+     * @param session the session
+     * @return {@code true} if the session was removed
+     */
+    public boolean remove(long id, V session) {
+        long hash = hash(id);
+        return segmentFor(hash).remove(id, hash, session) != null;
+    }
+
+    /**
+     * Gets the number of sessions
+     *
+     * @return the number of sessions
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * Removes all sessions
+     */
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private Segment<V> segmentFor(long hash) {
+        return segments.length == 1 ? segments[0] : segments[(int)(hash >>> segmentShift)];
+    }
+
+    static long hash(long id) {
+        //Murmur3 finalizer, so that sequential ids are spread across segments and slots
+        id ^= id >>> 33;
+        id *= 0xff51afd7ed558ccdL;
+        id ^= id >>> 33;
+        id *= 0xc4ceb9fe1a85ec53L;
+        id ^= id >>> 33;
+        return id;
+    }
+
+    private static final class Segment<V> {
+        private long[] keys = new long[MIN_SEGMENT_CAPACITY];
+        private Object[] values = new Object[MIN_SEGMENT_CAPACITY];
+        volatile int size;
+
+        @SuppressWarnings("unchecked")
+        synchronized V get(long id, long hash) {
+            final long[] keys = this.keys;
+            final Object[] values = this.values;
+            final int mask = keys.length - 1;
+            for (int i = (int)hash & mask ; values[i] != null ; i = (i + 1) & mask) {
+                if (keys[i] == id) {
+                    return (V)values[i];
+                }
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V put(long id, long hash, V session) {
+            int mask = keys.length - 1;
+            int i = (int)hash & mask;
+            for (; values[i] != null ; i = (i + 1) & mask) {
+                if (keys[i] == id) {
+                    V old = (V)values[i];
+                    values[i] = session;
+                    return old;
+                }
+            }
+            keys[i] = id;
+            values[i] = session;
+            //Keep the load factor at or below 0.5
+            if (++size > keys.length >> 1) {
+                resize(keys.length << 1);
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V remove(long id, long hash, V expected) {
+            final long[] keys = this.keys;
+            final Object[] values = this.values;
+            final int mask = keys.length - 1;
+            int i = (int)hash & mask;
+            for (; values[i] != null ; i = (i + 1) & mask) {
+                if (keys[i] == id) {
+                    break;
+                }
+            }
+            V old = (V)values[i];
+            if (old == null || (expected != null && old != expected)) {
+                return null;
+            }
+            //Shift back the following entries of the probe sequence so that no tombstones are needed
+            int gap = i;
+            for (int j = (gap + 1) & mask ; values[j] != null ; j = (j + 1) & mask) {
+                int home = (int)hash(keys[j]) & mask;
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    keys[gap] = keys[j];
+                    values[gap] = values[j];
+                    gap = j;
+                }
+            }
+            keys[gap] = 0;
+            values[gap] = null;
+            size--;
+            return old;
+        }
+
+        synchronized void clear() {
+            keys = new long[MIN_SEGMENT_CAPACITY];
+            values = new Object[MIN_SEGMENT_CAPACITY];
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            final long[] oldKeys = keys;
+            final Object[] oldValues = values;
+            final long[] newKeys = new long[capacity];
+            final Object[] newValues = new Object[capacity];
+            final int mask = capacity - 1;
+            for (int i = 0 ; i < oldKeys.length ; i++) {
+                if (oldValues[i] != null) {
+                    int j = (int)hash(oldKeys[i]) & mask;
+                    while (newValues[j] != null) {
+                        j = (j + 1) & mask;
+                    }
+                    newKeys[j] = oldKeys[i];
+                    newValues[j] = oldValues[i];
+                }
+            }
+            keys = newKeys;
+            values = newValues;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.common;
+
+import javax.management.Notification;
+
+/**
+ * A {@link ServerNotifications#SESSIONS_REMOVED} notification for the sessions created by one client, so that a
+ * {@link SessionOwnerFilter} can keep it from being sent to the others
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class SessionsRemovedNotification extends Notification {
+    private static final long serialVersionUID = 1L;
+
+    private final long owner;
+
+    /**
+     * Constructor
+     *
+     * @param source the MBean sending the notification
+     * @param sequenceNumber the notification sequence number
+     * @param timeStamp the time the sessions were removed
+     * @param owner the id of the client which created the sessions, or {@code 0} if it is not known
+     * @param sessionIds the ids of the removed sessions, set as the user data
+     */
+    public SessionsRemovedNotification(Object source, long sequenceNumber, long timeStamp, long owner, long[] sessionIds) {
+        super(ServerNotifications.SESSIONS_REMOVED, source, sequenceNumber, timeStamp, sessionIds.length + " stateful sessions removed");
+        this.owner = owner;
+        setUserData(sessionIds);
+    }
+
+    /**
+     * Gets the id of the client which created the sessions
+     *
+     * @return the client id, or {@code 0} if it is not known
+     */
+    public long getOwner() {
+        return owner;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.common;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing table from the signature hashes of methods (see {@link MethodUtil#getSignatureHash(String, String, String[])})
+ * to their position in an array held by the caller. It is built once and never changes, so lookups need no locking
+ * and allocate nothing. The caller must check that the method found really has the signature it is looking for,
+ * since a signature which is not in the table may still have the hash of one that is.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+final class SignatureIndex {
+    /** Returned by {@link #get(long)} if no method has the hash */
+    static final int NOT_FOUND = -1;
+    /** Returned by {@link #get(long)} if more than one method has the hash */
+    static final int AMBIGUOUS = -2;
+
+    private static final int EMPTY = -3;
+
+    private final long[] hashes;
+    private final int[] positions;
+    private final int mask;
+
+    /**
+     * Construct a new instance
+     *
+     * @param hashes the signature hash of the method at each position
+     */
+    SignatureIndex(long[] hashes) {
+        int capacity = 2;
+        //Keep the load factor at no more than a half so that probe sequences stay short
+        while (capacity < hashes.length * 2) {
+            capacity <<= 1;
+        }
+        this.hashes = new long[capacity];
+        this.positions = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(positions, EMPTY);
+        for (int i = 0 ; i < hashes.length ; i++) {
+            int slot = (int)hashes[i] & mask;
+            while (positions[slot] != EMPTY && this.hashes[slot] != hashes[i]) {
+                slot = (slot + 1) & mask;
+            }
+            if (positions[slot] == EMPTY) {
+                this.hashes[slot] = hashes[i];
+                positions[slot] = i;
+            } else {
+                positions[slot] = AMBIGUOUS;
+            }
+        }
+    }
+
+    /**
+     * Gets the position of the method with a signature hash
+     *
+     * @param hash the signature hash
+     * @return the position, {@link #NOT_FOUND} or {@link #AMBIGUOUS}
+     */
+    int get(long hash) {
+        int slot = (int)hash & mask;
+        while (true) {
+            int position = positions[slot];
+            if (position == EMPTY) {
+                return NOT_FOUND;
+            }
+            if (hashes[slot] == hash) {
+                return position;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.common;
+
+/**
+ * Thrown when an {@link Invocation} refers to a bean or method by an id which does not identify the same thing on the
+ * server any more, for example since the bean was redeployed with a different class. The bean was not called, so the
+ * client should resend the invocation identified by the name and method signature instead
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class StaleIdException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+
+    public StaleIdException(String name, String message) {
+        super(message);
+        this.name = name;
+    }
+
+    /**
+     * Get the JNDI name of the bean
+     *
+     * @return the JNDI name, or {@code null} if the name id itself was not recognised
+     */
+    public String getName() {
+        return name;
+    }
+}
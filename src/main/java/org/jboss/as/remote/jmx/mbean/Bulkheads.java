@@ -0,0 +1,216 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.mbean;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.as.remote.jmx.common.BeanBusyException;
+
+/**
+ * Limits the number of concurrent invocations of each bean, so that a slow bean cannot tie up all the threads
+ * calling into this MBean. Invocations wait a bounded time for a permit and are rejected with a
+ * {@link BeanBusyException} if none becomes available.
+ * <p/>
+ * When the limits change the semaphores are resized in place, so invocations in progress keep counting against
+ * the new limit and give their permits back to the same semaphore.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+final class Bulkheads {
+    static final long DEFAULT_MAX_WAIT_TIME = 1000;
+
+    private volatile Map<String, Integer> limits = Collections.emptyMap();
+    private volatile int defaultLimit;
+    private volatile long maxWaitTime = DEFAULT_MAX_WAIT_TIME;
+    private final ConcurrentMap<String, Bulkhead> semaphores = new ConcurrentHashMap<String, Bulkhead>();
+    private final AtomicLong rejections = new AtomicLong();
+
+    /**
+     * Waits for a permit to invoke a bean
+     *
+     * @param name the JNDI name of the bean
+     * @return the semaphore to release the permit to once the invocation is done, or {@code null} if the bean is not limited
+     * @throws BeanBusyException if no permit became available in time
+     */
+    Semaphore acquire(String name) {
+        Bulkhead semaphore = semaphores.get(name);
+        if (semaphore == null) {
+            semaphore = create(name);
+            if (semaphore == null) {
+                return null;
+            }
+        }
+        boolean acquired;
+        if (semaphore.tryAcquire()) {
+            acquired = true;
+        } else {
+            long wait = maxWaitTime;
+            try {
+                acquired = wait > 0 && semaphore.tryAcquire(wait, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+        }
+        if (!acquired) {
+            rejections.incrementAndGet();
+            throw new BeanBusyException(name, "Rejected invocation of " + name + " since it already has " + semaphore.getLimit() + " invocations in progress");
+        }
+        return semaphore;
+    }
+
+    /**
+     * Creates the semaphore of a bean. Synchronized with {@link #resize()} so that a semaphore cannot be created
+     * with a limit which has just been replaced
+     */
+    private synchronized Bulkhead create(String name) {
+        Bulkhead semaphore = semaphores.get(name);
+        if (semaphore == null) {
+            int limit = getLimit(name);
+            if (limit <= 0) {
+                return null;
+            }
+            semaphore = new Bulkhead(limit);
+            semaphores.put(name, semaphore);
+        }
+        return semaphore;
+    }
+
+    /**
+     * Applies changed limits to the existing semaphores
+     */
+    private synchronized void resize() {
+        for (Map.Entry<String, Bulkhead> entry : semaphores.entrySet()) {
+            int limit = getLimit(entry.getKey());
+            if (limit <= 0) {
+                //No longer limited, the invocations in progress release their permits to the removed semaphore
+                semaphores.remove(entry.getKey());
+            } else {
+                entry.getValue().resize(limit);
+            }
+        }
+    }
+
+    /**
+     * Sets the per bean limits
+     *
+     * @param value a comma-separated list of {@code <jndi name>=<limit>}
+     */
+    void setLimits(String value) {
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        if (value != null && value.trim().length() > 0) {
+            for (String s : value.split(",")) {
+                s = s.trim();
+                int index = s.lastIndexOf('=');
+                if (index <= 0) {
+                    throw new IllegalArgumentException("Concurrency limit '" + s + "' is not of the form <jndi name>=<limit>");
+                }
+                try {
+                    map.put(s.substring(0, index).trim(), Integer.valueOf(s.substring(index + 1).trim()));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Concurrency limit '" + s + "' is not of the form <jndi name>=<limit>", e);
+                }
+            }
+        }
+        limits = map;
+        resize();
+    }
+
+    String getLimits() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : limits.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    int getDefaultLimit() {
+        return defaultLimit;
+    }
+
+    void setDefaultLimit(int defaultLimit) {
+        this.defaultLimit = defaultLimit;
+        resize();
+    }
+
+    long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    void setMaxWaitTime(long maxWaitTime) {
+        this.maxWaitTime = maxWaitTime;
+    }
+
+    long getRejectionCount() {
+        return rejections.get();
+    }
+
+    private int getLimit(String name) {
+        Integer limit = limits.get(name);
+        return limit != null ? limit : defaultLimit;
+    }
+
+    /**
+     * A semaphore whose number of permits can be changed while some are held
+     */
+    private static final class Bulkhead extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        private int limit;
+
+        Bulkhead(int limit) {
+            super(limit);
+            this.limit = limit;
+        }
+
+        synchronized int getLimit() {
+            return limit;
+        }
+
+        /**
+         * Changes the number of permits. If it shrinks below the number of invocations in progress, new invocations
+         * wait until enough of those have finished
+         *
+         * @param newLimit the new number of permits
+         */
+        synchronized void resize(int newLimit) {
+            int delta = newLimit - limit;
+            limit = newLimit;
+            if (delta > 0) {
+                release(delta);
+            } else if (delta < 0) {
+                reducePermits(-delta);
+            }
+        }
+    }
+}
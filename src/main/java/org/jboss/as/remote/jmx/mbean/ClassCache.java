@@ -0,0 +1,155 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.mbean;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caches the classes resolved by {@link RemoteViaJMX} when checking the type of looked up values, including the
+ * names which could not be resolved, as well as the outcome of the assignability checks.
+ * <p/>
+ * The cache holds on to the classes, so when a deployment goes away its entries must be dropped with
+ * {@link #removeClassLoader(ClassLoader)}, the same as for the reflection index.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+final class ClassCache {
+    //Class names come from the clients, so don't let unresolvable ones fill up memory
+    private static final int MAX_NOT_FOUND = 1000;
+
+    private final ConcurrentMap<ClassLoader, ConcurrentMap<String, Object>> classes = new ConcurrentHashMap<ClassLoader, ConcurrentMap<String, Object>>();
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, Boolean>> assignable = new ConcurrentHashMap<Class<?>, ConcurrentMap<Class<?>, Boolean>>();
+    private final AtomicInteger notFoundCount = new AtomicInteger();
+
+    /**
+     * Loads a class
+     *
+     * @param className the name of the class
+     * @param loader the class loader
+     * @return the class
+     * @throws ClassNotFoundException if the class could not be found, now or on an earlier call
+     */
+    Class<?> loadClass(String className, ClassLoader loader) throws ClassNotFoundException {
+        ConcurrentMap<String, Object> loaderClasses = classes.get(loader);
+        if (loaderClasses == null) {
+            loaderClasses = new ConcurrentHashMap<String, Object>();
+            ConcurrentMap<String, Object> existing = classes.putIfAbsent(loader, loaderClasses);
+            if (existing != null) {
+                loaderClasses = existing;
+            }
+        }
+        Object result = loaderClasses.get(className);
+        if (result == null) {
+            try {
+                result = Class.forName(className, true, loader);
+            } catch (ClassNotFoundException e) {
+                if (notFoundCount.incrementAndGet() > MAX_NOT_FOUND) {
+                    notFoundCount.decrementAndGet();
+                    throw e;
+                }
+                result = new NotFound(e.getMessage());
+            }
+            loaderClasses.put(className, result);
+        }
+        if (result instanceof NotFound) {
+            throw new ClassNotFoundException(((NotFound)result).message);
+        }
+        return (Class<?>)result;
+    }
+
+    /**
+     * Checks if a value class can be assigned to the expected class
+     *
+     * @param expected the expected class
+     * @param valueClass the class of the value
+     * @return {@code true} if the value class is assignable to the expected class
+     */
+    boolean isAssignable(Class<?> expected, Class<?> valueClass) {
+        ConcurrentMap<Class<?>, Boolean> verdicts = assignable.get(expected);
+        if (verdicts == null) {
+            verdicts = new ConcurrentHashMap<Class<?>, Boolean>();
+            ConcurrentMap<Class<?>, Boolean> existing = assignable.putIfAbsent(expected, verdicts);
+            if (existing != null) {
+                verdicts = existing;
+            }
+        }
+        Boolean verdict = verdicts.get(valueClass);
+        if (verdict == null) {
+            verdict = expected.isAssignableFrom(valueClass);
+            verdicts.put(valueClass, verdict);
+        }
+        return verdict;
+    }
+
+    /**
+     * Drops everything referring to the classes of a class loader, for example since the deployment was redeployed
+     *
+     * @param loader the class loader
+     */
+    void removeClassLoader(ClassLoader loader) {
+        if (loader != null) {
+            classes.remove(loader);
+        }
+        for (ConcurrentMap<String, Object> loaderClasses : classes.values()) {
+            for (Iterator<Object> it = loaderClasses.values().iterator() ; it.hasNext() ; ) {
+                Object result = it.next();
+                if (result instanceof Class<?> && ((Class<?>)result).getClassLoader() == loader) {
+                    it.remove();
+                }
+            }
+        }
+        for (Iterator<Map.Entry<Class<?>, ConcurrentMap<Class<?>, Boolean>>> it = assignable.entrySet().iterator() ; it.hasNext() ; ) {
+            Map.Entry<Class<?>, ConcurrentMap<Class<?>, Boolean>> entry = it.next();
+            if (entry.getKey().getClassLoader() == loader) {
+                it.remove();
+                continue;
+            }
+            for (Iterator<Class<?>> valueClasses = entry.getValue().keySet().iterator() ; valueClasses.hasNext() ; ) {
+                if (valueClasses.next().getClassLoader() == loader) {
+                    valueClasses.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Clears the cache, for example since classes may have been deployed or undeployed
+     */
+    void clear() {
+        classes.clear();
+        assignable.clear();
+        notFoundCount.set(0);
+    }
+
+    private static final class NotFound {
+        final String message;
+
+        NotFound(String message) {
+            this.message = message;
+        }
+    }
+}
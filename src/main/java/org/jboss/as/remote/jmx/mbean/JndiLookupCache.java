@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.mbean;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+/**
+ * Does the JNDI lookups for {@link RemoteViaJMX}, caching the values of bindings which do not change between lookups.
+ * <p/>
+ * An {@link InitialContext} is not safe for concurrent use, so each lookup takes one from a small pool of idle
+ * contexts and puts it back afterwards. The pool is owned by the cache rather than by the calling threads, so that
+ * flushing can close every idle context, and none are left behind in the thread locals of the connector's threads
+ * once the MBean is stopped or undeployed. A context which is in use while the cache is flushed is closed when it
+ * is put back.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+final class JndiLookupCache {
+    private static final int MAX_IDLE_CONTEXTS = 16;
+
+    private final ConcurrentMap<String, Object> values = new ConcurrentHashMap<String, Object>();
+    private final ConcurrentLinkedQueue<PooledContext> idle = new ConcurrentLinkedQueue<PooledContext>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /**
+     * Looks up a name, bypassing the cache. Used for bindings which return a new object on each lookup,
+     * such as stateful session beans
+     *
+     * @param name the jndi name
+     * @return the bound value
+     */
+    Object lookup(String name) throws NamingException {
+        PooledContext context = idle.poll();
+        if (context == null) {
+            context = new PooledContext(new InitialContext(), generation.get());
+        } else {
+            idleCount.decrementAndGet();
+        }
+        try {
+            return context.context.lookup(name);
+        } finally {
+            release(context);
+        }
+    }
+
+    /**
+     * Looks up a name whose binding does not change, returning the cached value if there is one
+     *
+     * @param name the jndi name
+     * @return the bound value
+     */
+    Object lookupCached(String name) throws NamingException {
+        Object value = values.get(name);
+        if (value == null) {
+            value = lookup(name);
+            Object existing = values.putIfAbsent(name, value);
+            if (existing != null) {
+                value = existing;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Removes the cached value of a name
+     *
+     * @param name the jndi name
+     */
+    void remove(String name) {
+        values.remove(name);
+    }
+
+    /**
+     * Clears the cached values, and closes the contexts. Those in use are closed once their lookup is done
+     */
+    void flush() {
+        values.clear();
+        generation.incrementAndGet();
+        PooledContext context;
+        while ((context = idle.poll()) != null) {
+            idleCount.decrementAndGet();
+            close(context.context);
+        }
+    }
+
+    private void release(PooledContext context) {
+        if (context.generation != generation.get()) {
+            close(context.context);
+            return;
+        }
+        if (idleCount.incrementAndGet() > MAX_IDLE_CONTEXTS) {
+            idleCount.decrementAndGet();
+            close(context.context);
+            return;
+        }
+        idle.add(context);
+        //If it was flushed while we were putting it back, make sure that it does not stay in the pool. If the
+        //flush took it out, the flush closed it
+        if (context.generation != generation.get() && idle.remove(context)) {
+            idleCount.decrementAndGet();
+            close(context.context);
+        }
+    }
+
+    private static void close(InitialContext context) {
+        try {
+            context.close();
+        } catch (NamingException ignore) {
+        }
+    }
+
+    private static final class PooledContext {
+        private final InitialContext context;
+        private final int generation;
+
+        PooledContext(InitialContext context, int generation) {
+            this.context = context;
+            this.generation = generation;
+        }
+    }
+}
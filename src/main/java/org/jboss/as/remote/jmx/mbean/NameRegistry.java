@@ -0,0 +1,224 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.mbean;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.as.remote.jmx.common.LatencyHistogram;
+
+/**
+ * The JNDI names which may be looked up remotely, along with what kind of binding each one is.
+ * Lookups read an immutable snapshot of the names and ids without locking, while changes copy it and swap it in
+ * with a single write, so that a reader never sees the ids of one version with the names of another.
+ * Each name is also given a compact id, which the clients send instead of the name when invoking.
+ * Ids are never reused, so that a client holding on to the id of a removed name does not end up calling something else.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+final class NameRegistry {
+
+    enum Kind {
+        STATELESS,
+        STATEFUL,
+        RAW;
+
+        static Kind parse(String kind) {
+            if (kind == null) {
+                throw new IllegalArgumentException("Null kind");
+            }
+            try {
+                return valueOf(kind.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown kind '" + kind + "', should be one of " + Arrays.toString(values()));
+            }
+        }
+    }
+
+    static final class Entry {
+        private final String name;
+        private final Kind kind;
+        private final int id;
+        private final String className;
+        //The statistics' histograms for the name, cached here so that no operation name is built per call
+        private volatile LatencyHistogram lookupHistogram;
+        private volatile LatencyHistogram resolveHistogram;
+        private volatile LatencyHistogram removeHistogram;
+
+        private Entry(String name, Kind kind, int id, String className) {
+            this.name = name;
+            this.kind = kind;
+            this.id = id;
+            this.className = className;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Kind getKind() {
+            return kind;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        /**
+         * Get the name of the class the bound value must be an instance of
+         *
+         * @return the class name, or {@code null} if only the class requested by the client is checked
+         */
+        String getClassName() {
+            return className;
+        }
+
+        LatencyHistogram getLookupHistogram() {
+            return lookupHistogram;
+        }
+
+        void setLookupHistogram(LatencyHistogram histogram) {
+            this.lookupHistogram = histogram;
+        }
+
+        LatencyHistogram getResolveHistogram() {
+            return resolveHistogram;
+        }
+
+        void setResolveHistogram(LatencyHistogram histogram) {
+            this.resolveHistogram = histogram;
+        }
+
+        LatencyHistogram getRemoveHistogram() {
+            return removeHistogram;
+        }
+
+        void setRemoveHistogram(LatencyHistogram histogram) {
+            this.removeHistogram = histogram;
+        }
+    }
+
+    private static final class Snapshot {
+        final Map<String, Entry> entries;
+        final Entry[] ids;
+
+        Snapshot(Map<String, Entry> entries, Entry[] ids) {
+            this.entries = entries;
+            this.ids = ids;
+        }
+    }
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.<String, Entry>emptyMap(), new Entry[0]);
+
+    Entry get(String name) {
+        return snapshot.entries.get(name);
+    }
+
+    Entry get(int id) {
+        Entry[] ids = snapshot.ids;
+        Entry entry = id >= 0 && id < ids.length ? ids[id] : null;
+        if (entry == null) {
+            throw new IllegalArgumentException("Unknown name id " + id);
+        }
+        return entry;
+    }
+
+    /**
+     * Adds a name, or changes the kind and class name of an existing one while keeping its id
+     *
+     * @param name the JNDI name
+     * @param kind the kind of binding
+     * @param className the name of the class the bound value must be an instance of, may be {@code null}
+     * @return the entry
+     */
+    synchronized Entry add(String name, Kind kind, String className) {
+        Snapshot current = snapshot;
+        Entry existing = current.entries.get(name);
+        int id;
+        Entry[] ids;
+        if (existing != null) {
+            id = existing.id;
+            ids = current.ids.clone();
+        } else {
+            id = current.ids.length;
+            ids = Arrays.copyOf(current.ids, id + 1);
+        }
+        Entry entry = new Entry(name, kind, id, className);
+        ids[id] = entry;
+        Map<String, Entry> entries = new HashMap<String, Entry>(current.entries);
+        entries.put(name, entry);
+        snapshot = new Snapshot(entries, ids);
+        return entry;
+    }
+
+    /**
+     * Removes a name
+     *
+     * @param name the JNDI name
+     * @return the removed entry, or {@code null} if the name was not registered
+     */
+    synchronized Entry remove(String name) {
+        Snapshot current = snapshot;
+        Entry existing = current.entries.get(name);
+        if (existing == null) {
+            return null;
+        }
+        Entry[] ids = current.ids.clone();
+        ids[existing.id] = null;
+        Map<String, Entry> entries = new HashMap<String, Entry>(current.entries);
+        entries.remove(name);
+        snapshot = new Snapshot(entries, ids);
+        return existing;
+    }
+
+    /**
+     * Gets all the entries
+     *
+     * @return an unmodifiable snapshot of the entries
+     */
+    Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(snapshot.entries.values());
+    }
+
+    /**
+     * Gets the names of a kind
+     *
+     * @param kind the kind
+     * @return a comma-separated list of the names
+     */
+    String getNames(Kind kind) {
+        StringBuilder sb = new StringBuilder();
+        for (Entry entry : snapshot.entries.values()) {
+            if (entry.kind == kind) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(entry.name);
+            }
+        }
+        return sb.toString();
+    }
+}
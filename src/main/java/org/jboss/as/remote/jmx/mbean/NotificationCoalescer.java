@@ -0,0 +1,156 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.mbean;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanNotificationInfo;
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+
+import org.jboss.as.remote.jmx.common.ServerNotifications;
+import org.jboss.as.remote.jmx.common.SessionsRemovedNotification;
+
+/**
+ * Collects removed stateful sessions and changed names, and sends them on as {@link ServerNotifications} at most
+ * once per interval, so that a burst of expiring sessions does not turn into a burst of notifications for every
+ * listening client. Removed sessions are grouped by the client which created them, so that each client only needs
+ * to receive its own.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+final class NotificationCoalescer {
+    static final long DEFAULT_INTERVAL = 1000;
+    static final int MAX_SESSIONS_PER_NOTIFICATION = 1000;
+
+    static final MBeanNotificationInfo[] NOTIFICATION_INFO = new MBeanNotificationInfo[] {
+            new MBeanNotificationInfo(new String[] {ServerNotifications.SESSIONS_REMOVED}, SessionsRemovedNotification.class.getName(), "Stateful sessions were removed"),
+            new MBeanNotificationInfo(new String[] {ServerNotifications.NAMES_CHANGED}, Notification.class.getName(), "Names were added, removed or changed"),
+            new MBeanNotificationInfo(new String[] {ServerNotifications.STOPPING}, Notification.class.getName(), "The MBean is stopping")};
+
+    private final NotificationBroadcasterSupport broadcaster;
+    private final Object source;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Long, Set<Long>> removedSessions = new LinkedHashMap<Long, Set<Long>>();
+    private final Set<String> changedNames = new LinkedHashSet<String>();
+    private volatile long interval = DEFAULT_INTERVAL;
+    private long lastSent;
+
+    NotificationCoalescer(NotificationBroadcasterSupport broadcaster, Object source) {
+        this.broadcaster = broadcaster;
+        this.source = source;
+    }
+
+    synchronized void sessionRemoved(long owner, long sessionId) {
+        Set<Long> sessions = removedSessions.get(owner);
+        if (sessions == null) {
+            sessions = new LinkedHashSet<Long>();
+            removedSessions.put(owner, sessions);
+        }
+        sessions.add(sessionId);
+    }
+
+    synchronized void nameChanged(String name) {
+        changedNames.add(name);
+    }
+
+    /**
+     * Sends the pending notifications if the interval has passed since they were last sent
+     *
+     * @param now the current time in milliseconds
+     */
+    void flush(long now) {
+        List<SessionsRemovedNotification> sessions;
+        String[] names;
+        synchronized (this) {
+            if (now - lastSent < interval || (removedSessions.isEmpty() && changedNames.isEmpty())) {
+                return;
+            }
+            lastSent = now;
+            sessions = drainSessions(now);
+            names = changedNames.toArray(new String[changedNames.size()]);
+            changedNames.clear();
+        }
+        send(now, sessions, names);
+    }
+
+    /**
+     * Sends the pending notifications followed by a {@link ServerNotifications#STOPPING} notification
+     */
+    void stopping() {
+        long now = System.currentTimeMillis();
+        List<SessionsRemovedNotification> sessions;
+        String[] names;
+        synchronized (this) {
+            lastSent = now;
+            sessions = drainSessions(now);
+            names = changedNames.toArray(new String[changedNames.size()]);
+            changedNames.clear();
+        }
+        send(now, sessions, names);
+        broadcaster.sendNotification(new Notification(ServerNotifications.STOPPING, source, sequence.incrementAndGet(), now, "Stopping"));
+    }
+
+    long getInterval() {
+        return interval;
+    }
+
+    void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    private List<SessionsRemovedNotification> drainSessions(long now) {
+        List<SessionsRemovedNotification> notifications = new ArrayList<SessionsRemovedNotification>();
+        for (Map.Entry<Long, Set<Long>> entry : removedSessions.entrySet()) {
+            long[] sessions = new long[entry.getValue().size()];
+            int i = 0;
+            for (Long id : entry.getValue()) {
+                sessions[i++] = id;
+            }
+            for (int start = 0 ; start < sessions.length ; start += MAX_SESSIONS_PER_NOTIFICATION) {
+                long[] ids = Arrays.copyOfRange(sessions, start, Math.min(sessions.length, start + MAX_SESSIONS_PER_NOTIFICATION));
+                notifications.add(new SessionsRemovedNotification(source, sequence.incrementAndGet(), now, entry.getKey(), ids));
+            }
+        }
+        removedSessions.clear();
+        return notifications;
+    }
+
+    private void send(long now, List<SessionsRemovedNotification> sessions, String[] names) {
+        for (SessionsRemovedNotification notification : sessions) {
+            broadcaster.sendNotification(notification);
+        }
+        if (names.length > 0) {
+            Notification notification = new Notification(ServerNotifications.NAMES_CHANGED, source, sequence.incrementAndGet(), now, "Names changed: " + Arrays.toString(names));
+            notification.setUserData(names);
+            broadcaster.sendNotification(notification);
+        }
+    }
+}
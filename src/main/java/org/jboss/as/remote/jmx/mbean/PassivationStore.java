@@ -0,0 +1,298 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.mbean;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+/**
+ * Holds serialized objects off the heap in a memory-mapped file.
+ * <p/>
+ * The file is divided into blocks of {@link #BLOCK_SIZE} bytes, and each object is written to the first run of free
+ * blocks large enough to hold it. When there is no such run the object is not written, and the caller keeps it on
+ * the heap instead.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public final class PassivationStore {
+    public static final int BLOCK_SIZE = 256;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private final int blocks;
+    private final BitSet used;
+    private int usedBlocks;
+    private int size;
+    private boolean closed;
+
+    private PassivationStore(File file, RandomAccessFile raf, MappedByteBuffer buffer, int blocks) {
+        this.file = file;
+        this.raf = raf;
+        this.buffer = buffer;
+        this.blocks = blocks;
+        this.used = new BitSet(blocks);
+    }
+
+    /**
+     * Creates a store backed by a new temporary file. Where the platform allows it the file is deleted as soon as it
+     * is mapped, so nothing is left behind if the server dies, otherwise it is deleted when the store is closed
+     *
+     * @param directory the directory to create the file in, or {@code null} for the default temporary directory
+     * @param capacity the size of the file in bytes, at most {@link Integer#MAX_VALUE}
+     * @return the store
+     * @throws IOException if the file could not be created or mapped
+     */
+    public static PassivationStore create(File directory, long capacity) throws IOException {
+        if (capacity < BLOCK_SIZE || capacity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Capacity must be between " + BLOCK_SIZE + " and " + Integer.MAX_VALUE + " bytes");
+        }
+        int blocks = (int)(capacity / BLOCK_SIZE);
+        File file = File.createTempFile("remote-jmx-passivation", ".slab", directory);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength((long)blocks * BLOCK_SIZE);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long)blocks * BLOCK_SIZE);
+            //The mapping keeps the contents reachable. This fails on Windows, where close() deletes it instead
+            file.delete();
+            return new PassivationStore(file, raf, buffer, blocks);
+        } catch (IOException e) {
+            raf.close();
+            file.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Serializes an object into the store
+     *
+     * @param value the object
+     * @return the slot holding the object, or {@code null} if the store does not have room for it
+     * @throws IOException if the object could not be serialized
+     */
+    public Slot write(Object value) throws IOException {
+        return writeSerialized(serialize(value));
+    }
+
+    /**
+     * Copies an object serialized by {@link #serialize(Object)} into the store
+     *
+     * @param data the serialized object
+     * @return the slot holding the object, or {@code null} if the store does not have room for it
+     */
+    public Slot writeSerialized(byte[] data) {
+        int count = (data.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int block;
+        synchronized (this) {
+            checkOpen();
+            block = allocate(count);
+            if (block < 0) {
+                return null;
+            }
+            usedBlocks += count;
+            size++;
+        }
+        //The blocks are ours now, so copying into them needs no lock
+        ByteBuffer target = buffer.duplicate();
+        target.position(block * BLOCK_SIZE);
+        target.put(data);
+        return new Slot(block, data.length);
+    }
+
+    /**
+     * Serializes an object, so the caller can check its size before writing it to the store
+     *
+     * @param value the object
+     * @return the serialized object
+     * @throws IOException if the object could not be serialized
+     */
+    public static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(BLOCK_SIZE);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(value);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes an object from the store. The slot stays allocated until it is {@link #free(Slot) freed}
+     *
+     * @param slot the slot holding the object
+     * @param classLoader the class loader to resolve the classes of the object with, or {@code null} for the default
+     * @return the object
+     * @throws IOException if the object could not be deserialized
+     * @throws ClassNotFoundException if a class of the object could not be found
+     */
+    public Object read(Slot slot, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+        synchronized (this) {
+            checkOpen();
+        }
+        byte[] data = new byte[slot.length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(slot.block * BLOCK_SIZE);
+        source.get(data);
+        ObjectInputStream in = new ClassLoaderObjectInputStream(new ByteArrayInputStream(data), classLoader);
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Frees the blocks of a slot
+     *
+     * @param slot the slot
+     */
+    public synchronized void free(Slot slot) {
+        if (closed) {
+            return;
+        }
+        int count = slot.getBlocks();
+        used.clear(slot.block, slot.block + count);
+        usedBlocks -= count;
+        size--;
+    }
+
+    /**
+     * Get the number of objects in the store
+     *
+     * @return the number of objects
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of bytes taken up by the blocks in use
+     *
+     * @return the number of bytes
+     */
+    public synchronized long getUsedBytes() {
+        return (long)usedBlocks * BLOCK_SIZE;
+    }
+
+    /**
+     * Get the size of the store
+     *
+     * @return the number of bytes
+     */
+    public long getCapacity() {
+        return (long)blocks * BLOCK_SIZE;
+    }
+
+    /**
+     * Discards all the objects and deletes the file. The mapping itself is released once the store is garbage collected
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        used.clear();
+        usedBlocks = 0;
+        size = 0;
+        try {
+            raf.close();
+        } catch (IOException ignore) {
+        }
+        file.delete();
+    }
+
+    private int allocate(int count) {
+        int start = used.nextClearBit(0);
+        while (start + count <= blocks) {
+            int end = used.nextSetBit(start);
+            if (end < 0 || end >= start + count) {
+                used.set(start, start + count);
+                return start;
+            }
+            start = used.nextClearBit(end);
+        }
+        return -1;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Passivation store is closed");
+        }
+    }
+
+    /**
+     * The location of an object in the store
+     */
+    public static final class Slot {
+        private final int block;
+        private final int length;
+
+        private Slot(int block, int length) {
+            this.block = block;
+            this.length = length;
+        }
+
+        /**
+         * Get the length of the serialized object
+         *
+         * @return the number of bytes
+         */
+        public int getLength() {
+            return length;
+        }
+
+        int getBlocks() {
+            return (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        }
+    }
+
+    private static class ClassLoaderObjectInputStream extends ObjectInputStream {
+        private final ClassLoader classLoader;
+
+        ClassLoaderObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (classLoader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                } catch (ClassNotFoundException e) {
+                    //Fall back to the default for primitives and classes only visible from here
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
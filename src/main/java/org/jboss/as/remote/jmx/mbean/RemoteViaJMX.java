@@ -21,22 +21,48 @@
 */
 package org.jboss.as.remote.jmx.mbean;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.ejb.Remove;
-import javax.naming.InitialContext;
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.NotificationBroadcasterSupport;
+import javax.management.ObjectName;
 import javax.naming.NamingException;
 
 import org.jboss.as.remote.jmx.client.StatefulBeanHandler;
 import org.jboss.as.remote.jmx.client.StatelessBeanHandler;
 import org.jboss.as.remote.jmx.common.DeploymentReflectionIndex;
+import org.jboss.as.remote.jmx.common.IdleTimeoutWheel;
+import org.jboss.as.remote.jmx.common.Invocation;
+import org.jboss.as.remote.jmx.common.InvocationResult;
+import org.jboss.as.remote.jmx.common.LatencyHistogram;
+import org.jboss.as.remote.jmx.common.MethodInvoker;
+import org.jboss.as.remote.jmx.common.MethodTable;
 import org.jboss.as.remote.jmx.common.MethodUtil;
+import org.jboss.as.remote.jmx.common.ResultChunk;
+import org.jboss.as.remote.jmx.common.SessionIdGenerator;
+import org.jboss.as.remote.jmx.common.SessionRegistry;
+import org.jboss.as.remote.jmx.common.StaleIdException;
 import org.jboss.logging.Logger;
 
 /**
@@ -44,153 +70,1089 @@ import org.jboss.logging.Logger;
  * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
  * @version $Revision: 1.1 $
  */
-public class RemoteViaJMX implements RemoteViaJMXMBean {
+public class RemoteViaJMX extends NotificationBroadcasterSupport implements RemoteViaJMXMBean, MBeanRegistration {
+
+    private static final long REAPER_TICK_MILLIS = 1000;
+    private static final int REAPER_WHEEL_SIZE = 512;
+    private static final int MAX_REMEMBERED_EXPIRED_SESSIONS = 10000;
+    private static final int DEFAULT_WARM_UP_THREADS = 4;
+    private static final long DEFAULT_WARM_UP_TIMEOUT = 60000;
+    private static final long MIN_WARM_UP_RETRY_DELAY = 100;
+    private static final long MAX_WARM_UP_RETRY_DELAY = 5000;
+    private static final long DEFAULT_PASSIVATION_STORE_SIZE = 64 * 1024 * 1024;
+    private static final int DEFAULT_PASSIVATION_MIN_SIZE = 1024;
 
     private final Logger log = Logger.getLogger(RemoteViaJMX.class);
 
     private final DeploymentReflectionIndex index = DeploymentReflectionIndex.create();
 
-    private final Map<String, Object> statelessBeans = Collections.synchronizedMap(new HashMap<String, Object>());
-    private final Map<Long, Object> statefulBeanInstances = Collections.synchronizedMap(new HashMap<Long, Object>());
+    private final JndiLookupCache jndi = new JndiLookupCache();
+    private final ClassCache classCache = new ClassCache();
+    private final NameRegistry names = new NameRegistry();
+    private final ConcurrentMap<String, Object> statelessBeans = new ConcurrentHashMap<String, Object>();
+    private final SessionRegistry<StatefulSession> statefulBeanInstances = new SessionRegistry<StatefulSession>();
+    private final SessionIdGenerator sessionIdGenerator = new SessionIdGenerator();
+    private final IdleTimeoutWheel<StatefulSession> idleSessions = new IdleTimeoutWheel<StatefulSession>(REAPER_TICK_MILLIS, REAPER_WHEEL_SIZE, new IdleSessionListener(), System.currentTimeMillis());
+    private final Map<Long, Long> expiredSessions = new LinkedHashMap<Long, Long>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > MAX_REMEMBERED_EXPIRED_SESSIONS;
+        }
+    };
+    private final AtomicLong expiredSessionCount = new AtomicLong();
+    private final IdleTimeoutWheel<StatefulSession> passivationWheel = new IdleTimeoutWheel<StatefulSession>(REAPER_TICK_MILLIS, REAPER_WHEEL_SIZE, new PassivationListener(), System.currentTimeMillis());
+    private final AtomicLong passivationCount = new AtomicLong();
+    private final AtomicLong activationCount = new AtomicLong();
+    private volatile long statefulPassivationIdleTime;
+    private volatile long passivationStoreSize = DEFAULT_PASSIVATION_STORE_SIZE;
+    private volatile int passivationMinSize = DEFAULT_PASSIVATION_MIN_SIZE;
+    private volatile String passivationDirectory;
+    private volatile PassivationStore passivationStore;
+    private final Bulkheads bulkheads = new Bulkheads();
+    private final ResultCache resultCache = new ResultCache();
+    private final ResultCursors resultCursors = new ResultCursors(sessionIdGenerator, REAPER_TICK_MILLIS, REAPER_WHEEL_SIZE);
+    private volatile long statefulMaxIdleTime;
+    private volatile int maxStatefulSessions;
+    //Reserved before creating a session so that concurrent lookups cannot exceed maxStatefulSessions
+    private final AtomicInteger statefulSessionSlots = new AtomicInteger();
+    private volatile ScheduledExecutorService reaper;
+    private final Map<String, MethodTable> methodTables = new ConcurrentHashMap<String, MethodTable>();
+    private final RemoteViaJMXStatistics statistics = new RemoteViaJMXStatistics();
+    private final NotificationCoalescer notifications = new NotificationCoalescer(this, this);
+    private volatile boolean warmUpOnStart;
+    private volatile int warmUpThreads = DEFAULT_WARM_UP_THREADS;
+    private volatile long warmUpTimeout = DEFAULT_WARM_UP_TIMEOUT;
+    private volatile long warmUpDuration = -1;
+    private volatile String[] warmUpFailures = new String[0];
+    private volatile long instanceId;
+    private volatile MBeanServer server;
+    private volatile ObjectName statisticsName;
 
-    private final Set<String> statelessBeanNames = Collections.synchronizedSet(new HashSet<String>());
-    private final Set<String> statefulBeanNames = Collections.synchronizedSet(new HashSet<String>());
-    private final Set<String> rawNames = Collections.synchronizedSet(new HashSet<String>());
+    public RemoteViaJMX() {
+        super(NotificationCoalescer.NOTIFICATION_INFO);
+    }
 
     public Object lookup(String className, String name) throws NamingException {
-        if (statelessBeanNames.contains(name)) {
-            return lookupStateless(className, name);
-        }
-        if (statefulBeanNames.contains(name)) {
-            return lookupStateful(className, name);
+        return lookup(className, name, 0);
+    }
+
+    public Object lookup(String className, String name, long owner) throws NamingException {
+        long start = System.nanoTime();
+        NameRegistry.Entry entry = names.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("No stateful or stateless beans, or raw names are registered for '" + name + "'");
         }
-        if (rawNames.contains(name)) {
-            return lookupRaw(className, name);
+        Object value;
+        switch (entry.getKind()) {
+        case STATELESS:
+            value = lookupStateless(className, entry);
+            break;
+        case STATEFUL:
+            value = lookupStateful(className, entry, owner);
+            break;
+        default:
+            value = lookupRaw(className, entry);
         }
-        throw new IllegalArgumentException("No stateful or stateless beans, or raw names are registered for '" + name + "'");
+        statistics.lookup(entry, start);
+        return value;
     }
 
     public Object invokeStateless(String name, String declaringClassName, String returnType, String methodName, String[] sig, Object[] args) throws Exception {
-        Object value = statelessBeans.get(name);
-        if (value == null) {
-            throw new IllegalStateException("No proxy found for: " + name);
-        }
+        //Older clients do not know about streamed results, so only the invocation envelope streams them
+        return invokeStateless(name, returnType, methodName, sig, args, false);
+    }
 
-        Method m;
-        try {
-            m = MethodUtil.getMethod(index, value.getClass(), returnType, methodName, sig);
-        } catch (Exception e) {
-            throw new RuntimeException("Could not find method called " + methodName + " with signature " + Arrays.toString(sig));
-        }
+    public Object invokeStateful(String name, String declaringClassName, String returnType, String methodName, long sessionId, String[] sig, Object[] args) throws Exception {
+        return invokeStateful(name, returnType, methodName, sessionId, sig, args, false);
+    }
 
-        return m.invoke(value, args);
+    public Object invokeStatelessById(String name, int methodId, long methodHash, Object[] args) throws Exception {
+        return invokeStatelessById(name, methodId, methodHash, args, false);
     }
 
-    public Object invokeStateful(String name, String declaringClassName, String returnType, String methodName, long sessionId, String[] sig, Object[] args) throws Exception {
-        Object value = statefulBeanInstances.get(sessionId);
-        if (value == null) {
-            throw new IllegalStateException("No proxy found for: " + name);
-        }
-        Method m;
-        try {
-            m = MethodUtil.getMethod(index, value.getClass(), returnType, methodName, sig);
-        } catch (Exception e) {
-            throw new RuntimeException("Could not find method called " + methodName + " with signature " + Arrays.toString(sig));
-        }
+    public Object invokeStatefulById(String name, long sessionId, int methodId, long methodHash, Object[] args) throws Exception {
+        return invokeStatefulById(name, sessionId, methodId, methodHash, args, false);
+    }
 
-        Object o = m.invoke(value, args);
-        if (m.isAnnotationPresent(Remove.class)) {
-            statefulBeanInstances.remove(sessionId);
+    public InvocationResult[] invokeBatch(Invocation[] invocations) {
+        InvocationResult[] results = new InvocationResult[invocations.length];
+        for (int i = 0 ; i < invocations.length ; i++) {
+            try {
+                //The batch and async clients have no proxy method to turn a streamed result back into the declared type
+                results[i] = InvocationResult.success(invoke(invocations[i], false));
+            } catch (InvocationTargetException e) {
+                results[i] = InvocationResult.failure(e.getCause());
+            } catch (Throwable t) {
+                results[i] = InvocationResult.failure(t);
+            }
         }
-        return o;
+        return results;
+    }
+
+    public Object invoke(Invocation invocation) throws Exception {
+        return invoke(invocation, true);
+    }
+
+    public ResultChunk nextResultChunk(long cursorId) throws IOException {
+        return resultCursors.next(cursorId);
+    }
+
+    public void closeResultCursor(long cursorId) {
+        resultCursors.close(cursorId);
     }
 
     public void start() {
         log.info("Starting remote ejb invocation mbean");
+        instanceId = sessionIdGenerator.nextId();
+        ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "RemoteViaJMX stateful session reaper");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        reaper.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    long now = System.currentTimeMillis();
+                    idleSessions.expire(now);
+                    passivationWheel.expire(now);
+                    resultCursors.expire(now);
+                    notifications.flush(now);
+                } catch (Throwable t) {
+                    log.error("Error expiring idle stateful sessions and result cursors", t);
+                }
+            }
+        }, REAPER_TICK_MILLIS, REAPER_TICK_MILLIS, TimeUnit.MILLISECONDS);
+        this.reaper = reaper;
+
+        if (warmUpOnStart) {
+            //Do not hold up the deployment, and the beans may not be bound yet anyway
+            Thread t = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        warmUp();
+                    } catch (Throwable t) {
+                        log.error("Error warming up", t);
+                    }
+                }
+            }, "RemoteViaJMX warm-up");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    public void warmUp() {
+        long start = System.currentTimeMillis();
+        final long deadline = start + warmUpTimeout;
+        final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+        List<NameRegistry.Entry> entries = new ArrayList<NameRegistry.Entry>();
+        for (NameRegistry.Entry entry : names.getEntries()) {
+            //Looking up a stateful session bean creates a session, so those cannot be warmed up
+            if (entry.getKind() != NameRegistry.Kind.STATEFUL) {
+                entries.add(entry);
+            }
+        }
+        if (!entries.isEmpty()) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(warmUpThreads, entries.size()), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "RemoteViaJMX warm-up " + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            try {
+                for (final NameRegistry.Entry entry : entries) {
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            String failure = warmUp(entry, deadline);
+                            if (failure != null) {
+                                failures.add(failure);
+                            }
+                        }
+                    });
+                }
+            } finally {
+                executor.shutdown();
+            }
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    log.info("Still warming up");
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                failures.add("Interrupted");
+            }
+        }
+        warmUpFailures = failures.toArray(new String[failures.size()]);
+        warmUpDuration = System.currentTimeMillis() - start;
+        log.info("Warmed up " + (entries.size() - warmUpFailures.length) + " of " + entries.size() + " names in " + warmUpDuration + "ms");
     }
 
     public void stop() {
+        instanceId = 0;
+        ScheduledExecutorService reaper = this.reaper;
+        if (reaper != null) {
+            reaper.shutdownNow();
+            this.reaper = null;
+        }
+        notifications.stopping();
+        idleSessions.clear();
+        passivationWheel.clear();
+        synchronized (expiredSessions) {
+            expiredSessions.clear();
+        }
         statefulBeanInstances.clear();
+        statefulSessionSlots.set(0);
+        synchronized (this) {
+            if (passivationStore != null) {
+                passivationStore.close();
+                passivationStore = null;
+            }
+        }
+        resultCursors.clear();
+        resultCache.clear();
         statelessBeans.clear();
+        methodTables.clear();
+        index.clear();
+        statistics.clearMethodTables();
+        jndi.flush();
+        classCache.clear();
+    }
+
+    public void flushLookupCache() {
+        jndi.flush();
+        classCache.clear();
+        statelessBeans.clear();
+        methodTables.clear();
+        statistics.clearMethodTables();
+        index.clear();
+        resultCache.clear();
+        log.info("Flushed lookup cache");
+    }
+
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        this.server = server;
+        if (name != null) {
+            statisticsName = new ObjectName(name.getCanonicalName() + ",service=statistics");
+        }
+        return name;
+    }
+
+    public void postRegister(Boolean registrationDone) {
+        if (Boolean.TRUE.equals(registrationDone) && statisticsName != null) {
+            try {
+                server.registerMBean(statistics, statisticsName);
+            } catch (Exception e) {
+                log.warn("Could not register statistics mbean " + statisticsName, e);
+                statisticsName = null;
+            }
+        }
+    }
+
+    public void preDeregister() throws Exception {
+        ObjectName statisticsName = this.statisticsName;
+        if (statisticsName != null && server.isRegistered(statisticsName)) {
+            server.unregisterMBean(statisticsName);
+        }
+    }
+
+    public void postDeregister() {
     }
 
     public void setStatelessBeanNames(String names) {
-        parseNames(statelessBeanNames, names);
+        parseNames(NameRegistry.Kind.STATELESS, names);
+    }
+
+    public String getStatelessBeanNames() {
+        return names.getNames(NameRegistry.Kind.STATELESS);
     }
 
     public void setStatefulBeanNames(String names) {
-        parseNames(statefulBeanNames, names);
+        parseNames(NameRegistry.Kind.STATEFUL, names);
+    }
+
+    public String getStatefulBeanNames() {
+        return names.getNames(NameRegistry.Kind.STATEFUL);
     }
 
     public void setRawNames(String names) {
-        parseNames(rawNames, names);
+        parseNames(NameRegistry.Kind.RAW, names);
+    }
+
+    public String getRawNames() {
+        return names.getNames(NameRegistry.Kind.RAW);
+    }
+
+    public void addName(String kind, String name, String className) {
+        if (name == null || name.trim().length() == 0) {
+            throw new IllegalArgumentException("Null or empty name");
+        }
+        name = name.trim();
+        names.add(name, NameRegistry.Kind.parse(kind), className == null || className.trim().length() == 0 ? null : className.trim());
+        //Look up the binding again in case the kind changed
+        forget(name);
+        notifications.nameChanged(name);
+        log.info("Added " + kind + " name " + name);
+    }
+
+    public boolean removeName(String name) {
+        if (names.remove(name) == null) {
+            return false;
+        }
+        forget(name);
+        notifications.nameChanged(name);
+        log.info("Removed name " + name);
+        return true;
+    }
+
+    public long getInstanceId() {
+        return instanceId;
+    }
+
+    public long getNotificationInterval() {
+        return notifications.getInterval();
+    }
+
+    public void setNotificationInterval(long interval) {
+        notifications.setInterval(interval);
+    }
+
+    public long getStatefulPassivationIdleTime() {
+        return statefulPassivationIdleTime;
+    }
+
+    public void setStatefulPassivationIdleTime(long idleTime) {
+        this.statefulPassivationIdleTime = idleTime;
+    }
+
+    public long getPassivationStoreSize() {
+        return passivationStoreSize;
+    }
+
+    public void setPassivationStoreSize(long size) {
+        if (size < PassivationStore.BLOCK_SIZE || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The passivation store size must be between " + PassivationStore.BLOCK_SIZE + " and " + Integer.MAX_VALUE + " bytes");
+        }
+        this.passivationStoreSize = size;
+    }
+
+    public int getPassivationMinSize() {
+        return passivationMinSize;
+    }
+
+    public void setPassivationMinSize(int size) {
+        this.passivationMinSize = size;
+    }
+
+    public String getPassivationDirectory() {
+        return passivationDirectory;
+    }
+
+    public void setPassivationDirectory(String directory) {
+        this.passivationDirectory = directory == null || directory.trim().length() == 0 ? null : directory.trim();
+    }
+
+    public int getPassivatedStatefulSessionCount() {
+        PassivationStore store = passivationStore;
+        return store == null ? 0 : store.size();
+    }
+
+    public long getPassivationStoreUsed() {
+        PassivationStore store = passivationStore;
+        return store == null ? 0 : store.getUsedBytes();
+    }
+
+    public long getPassivationCount() {
+        return passivationCount.get();
+    }
+
+    public long getActivationCount() {
+        return activationCount.get();
+    }
+
+    public boolean isWarmUpOnStart() {
+        return warmUpOnStart;
+    }
+
+    public void setWarmUpOnStart(boolean warmUpOnStart) {
+        this.warmUpOnStart = warmUpOnStart;
+    }
+
+    public int getWarmUpThreads() {
+        return warmUpThreads;
+    }
+
+    public void setWarmUpThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+        this.warmUpThreads = threads;
+    }
+
+    public long getWarmUpTimeout() {
+        return warmUpTimeout;
+    }
+
+    public void setWarmUpTimeout(long timeout) {
+        this.warmUpTimeout = timeout;
+    }
+
+    public long getWarmUpDuration() {
+        return warmUpDuration;
+    }
+
+    public String[] getWarmUpFailures() {
+        return warmUpFailures.clone();
+    }
+
+    public long getStatefulMaxIdleTime() {
+        return statefulMaxIdleTime;
+    }
+
+    public void setStatefulMaxIdleTime(long maxIdleTime) {
+        this.statefulMaxIdleTime = maxIdleTime;
+    }
+
+    public int getMaxStatefulSessions() {
+        return maxStatefulSessions;
+    }
+
+    public void setMaxStatefulSessions(int maxSessions) {
+        this.maxStatefulSessions = maxSessions;
+    }
+
+    public int getStatefulSessionCount() {
+        return statefulBeanInstances.size();
+    }
+
+    public long getExpiredStatefulSessionCount() {
+        return expiredSessionCount.get();
+    }
+
+    private Object invoke(Invocation invocation, boolean stream) throws Exception {
+        if (invocation.hasIds() && invocation.getInstanceId() != instanceId) {
+            //The ids were handed out before a restart, and may mean something else now
+            throw new StaleIdException(invocation.getName(), "The ids were handed out by a previous instance of the MBean");
+        }
+        String name = invocation.getName();
+        if (name == null) {
+            try {
+                name = names.get(invocation.getNameId()).getName();
+            } catch (IllegalArgumentException e) {
+                throw new StaleIdException(null, e.getMessage());
+            }
+        }
+        if (invocation.isStateful()) {
+            if (invocation.getMethodId() >= 0) {
+                return invokeStatefulById(name, invocation.getSessionId(), invocation.getMethodId(), invocation.getMethodHash(), invocation.getArgs(), stream);
+            }
+            return invokeStateful(name, invocation.getReturnType(), invocation.getMethodName(), invocation.getSessionId(), invocation.getSig(), invocation.getArgs(), stream);
+        }
+        if (invocation.getMethodId() >= 0) {
+            return invokeStatelessById(name, invocation.getMethodId(), invocation.getMethodHash(), invocation.getArgs(), stream);
+        }
+        return invokeStateless(name, invocation.getReturnType(), invocation.getMethodName(), invocation.getSig(), invocation.getArgs(), stream);
+    }
+
+    private Object invokeStateless(String name, String returnType, String methodName, String[] sig, Object[] args, boolean stream) throws Exception {
+        Object value = getStatelessBean(name);
+        MethodTable table = getMethodTable(name, value);
+        int methodId = resolveMethodId(name, table, returnType, methodName, sig);
+        if (methodId >= 0) {
+            return invokeStatelessMethod(name, table.getMethod(methodId), table.getInvoker(methodId), value, args, statistics.getMethodHistogram(name, table, methodId), stream);
+        }
+
+        Method m = resolveMethod(name, value, returnType, methodName, sig);
+        return invokeStatelessMethod(name, m, null, value, args, statistics.getMethodHistogram(name, MethodUtil.getMethodKey(returnType, methodName, sig)), stream);
+    }
+
+    private Object invokeStateful(String name, String returnType, String methodName, long sessionId, String[] sig, Object[] args, boolean stream) throws Exception {
+        StatefulSession session = getStatefulSession(name, sessionId);
+        Object value = acquire(name, session);
+        try {
+            MethodTable table = getMethodTable(name, value);
+            int methodId = resolveMethodId(name, table, returnType, methodName, sig);
+            if (methodId >= 0) {
+                return invokeStateful(name, session, value, table, methodId, args, stream);
+            }
+            Method m = resolveMethod(name, value, returnType, methodName, sig);
+            LatencyHistogram histogram = statistics.getMethodHistogram(name, MethodUtil.getMethodKey(returnType, methodName, sig));
+            if (m.isAnnotationPresent(Remove.class)) {
+                return invokeRemove(name, session, m, null, value, args, histogram, stream);
+            }
+            return invokeMethod(name, m, null, value, args, histogram, stream);
+        } finally {
+            session.release();
+        }
+    }
+
+    private Object invokeStatelessById(String name, int methodId, long methodHash, Object[] args, boolean stream) throws Exception {
+        Object value = getStatelessBean(name);
+        MethodTable table = getMethodTable(name, value);
+        checkMethodId(name, table, methodId, methodHash);
+        return invokeStatelessMethod(name, table.getMethod(methodId), table.getInvoker(methodId), value, args, statistics.getMethodHistogram(name, table, methodId), stream);
+    }
+
+    private Object invokeStatefulById(String name, long sessionId, int methodId, long methodHash, Object[] args, boolean stream) throws Exception {
+        StatefulSession session = getStatefulSession(name, sessionId);
+        Object value = acquire(name, session);
+        try {
+            MethodTable table = getMethodTable(name, value);
+            checkMethodId(name, table, methodId, methodHash);
+            return invokeStateful(name, session, value, table, methodId, args, stream);
+        } finally {
+            session.release();
+        }
+    }
+
+    private Object invokeStateful(String name, StatefulSession session, Object value, MethodTable table, int methodId, Object[] args, boolean stream) throws Exception {
+        Method method = table.getMethod(methodId);
+        MethodInvoker invoker = table.getInvoker(methodId);
+        LatencyHistogram histogram = statistics.getMethodHistogram(name, table, methodId);
+        if (table.isRemove(methodId)) {
+            return invokeRemove(name, session, method, invoker, value, args, histogram, stream);
+        }
+        return invokeMethod(name, method, invoker, value, args, histogram, stream);
     }
 
-    private void parseNames(Set<String> set, String value){
+    public String getBeanConcurrencyLimits() {
+        return bulkheads.getLimits();
+    }
+
+    public void setBeanConcurrencyLimits(String limits) {
+        bulkheads.setLimits(limits);
+    }
+
+    public int getDefaultBeanConcurrencyLimit() {
+        return bulkheads.getDefaultLimit();
+    }
+
+    public void setDefaultBeanConcurrencyLimit(int limit) {
+        bulkheads.setDefaultLimit(limit);
+    }
+
+    public long getBeanConcurrencyMaxWaitTime() {
+        return bulkheads.getMaxWaitTime();
+    }
+
+    public void setBeanConcurrencyMaxWaitTime(long maxWaitTime) {
+        bulkheads.setMaxWaitTime(maxWaitTime);
+    }
+
+    public long getRejectedInvocationCount() {
+        return bulkheads.getRejectionCount();
+    }
+
+    public String getCacheableMethods() {
+        return resultCache.getCacheableMethods();
+    }
+
+    public void setCacheableMethods(String methods) {
+        resultCache.setCacheableMethods(methods);
+    }
+
+    public int getResultCacheMaxSize() {
+        return resultCache.getMaxSize();
+    }
+
+    public void setResultCacheMaxSize(int maxSize) {
+        resultCache.setMaxSize(maxSize);
+    }
+
+    public long getResultCacheTimeToLive() {
+        return resultCache.getTimeToLive();
+    }
+
+    public void setResultCacheTimeToLive(long timeToLive) {
+        resultCache.setTimeToLive(timeToLive);
+    }
+
+    public int getResultCacheSize() {
+        return resultCache.size();
+    }
+
+    public long getResultCacheHitCount() {
+        return resultCache.getHitCount();
+    }
+
+    public long getResultCacheMissCount() {
+        return resultCache.getMissCount();
+    }
+
+    public long getResultCacheEvictionCount() {
+        return resultCache.getEvictionCount();
+    }
+
+    public void clearResultCache() {
+        resultCache.clear();
+    }
+
+    public int getResultChunkSize() {
+        return resultCursors.getChunkSize();
+    }
+
+    public void setResultChunkSize(int chunkSize) {
+        resultCursors.setChunkSize(chunkSize);
+    }
+
+    public int getResultChunkElements() {
+        return resultCursors.getChunkElements();
+    }
+
+    public void setResultChunkElements(int chunkElements) {
+        resultCursors.setChunkElements(chunkElements);
+    }
+
+    public long getResultCursorMaxIdleTime() {
+        return resultCursors.getMaxIdleTime();
+    }
+
+    public void setResultCursorMaxIdleTime(long maxIdleTime) {
+        resultCursors.setMaxIdleTime(maxIdleTime);
+    }
+
+    public int getResultCursorCount() {
+        return resultCursors.size();
+    }
+
+    private void parseNames(NameRegistry.Kind kind, String value){
         if (value != null && value.trim().length() > 0) {
             for (String s : value.split(",")) {
-                set.add(s.trim());
+                names.add(s.trim(), kind, null);
+                notifications.nameChanged(s.trim());
             }
         }
     }
 
-    private Object lookupStateless(String className, String name) throws NamingException {
+    /**
+     * Warms up a name, retrying with an increasing delay until the deadline if it fails
+     *
+     * @return {@code null} if it was warmed up, or else the failure
+     */
+    private String warmUp(NameRegistry.Entry entry, long deadline) {
+        long delay = MIN_WARM_UP_RETRY_DELAY;
+        while (true) {
+            try {
+                warmUp(entry);
+                return null;
+            } catch (Throwable t) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    log.debug("Could not warm up " + entry.getName(), t);
+                    return entry.getName() + ": " + t;
+                }
+                //Most likely the bean has not been bound yet
+                log.trace("Could not warm up " + entry.getName() + ", retrying in " + delay + "ms", t);
+                try {
+                    Thread.sleep(Math.min(delay, remaining));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return entry.getName() + ": " + t;
+                }
+                delay = Math.min(delay * 2, MAX_WARM_UP_RETRY_DELAY);
+            }
+        }
+    }
+
+    private void warmUp(NameRegistry.Entry entry) throws NamingException {
+        String name = entry.getName();
+        Object value = jndi.lookupCached(name);
+        checkRegisteredClass(entry, value);
+        if (entry.getKind() == NameRegistry.Kind.STATELESS) {
+            putStatelessBean(entry, value);
+            //The latency histograms are left until the methods are invoked
+            getMethodTable(name, value);
+        }
+    }
+
+    private void forget(String name) {
+        statelessBeans.remove(name);
+        MethodTable table = methodTables.remove(name);
+        if (table != null) {
+            statistics.removeMethodTable(table);
+        }
+        jndi.remove(name);
+    }
+
+    /**
+     * Caches a looked up stateless bean. If the name was removed or changed meanwhile, {@link #forget(String)} may
+     * already have run, so the value is dropped again rather than left behind for a name which no longer has it
+     */
+    private void putStatelessBean(NameRegistry.Entry entry, Object value) {
+        String name = entry.getName();
+        statelessBeans.put(name, value);
+        if (names.get(name) != entry) {
+            statelessBeans.remove(name, value);
+            jndi.remove(name);
+        }
+    }
+
+    private Object lookupStateless(String className, NameRegistry.Entry entry) throws NamingException {
+        String name = entry.getName();
         Object value = statelessBeans.get(name);
         if (value != null) {
-            return new StatelessBeanHandler(name);
+            return new StatelessBeanHandler(name, entry.getId(), instanceId, getMethodTable(name, value).getKeys());
         }
-        InitialContext context = new InitialContext();
-        value = context.lookup(name);
+        value = jndi.lookupCached(name);
         if (className == null) {
             throw new NamingException("No class specified for " + name);
         }
         checkClass(className, name, value);
-        statelessBeans.put(name, value);
-        return new StatelessBeanHandler(name);
+        checkRegisteredClass(entry, value);
+        putStatelessBean(entry, value);
+        return new StatelessBeanHandler(name, entry.getId(), instanceId, getMethodTable(name, value).getKeys());
     }
 
-    private Object lookupStateful(String className, String name) throws NamingException {
-        InitialContext context = new InitialContext();
-        Object value = context.lookup(name);
-        if (className == null) {
-            throw new NamingException("No class specified for " + name);
+    private Object getStatelessBean(String name) throws NamingException {
+        Object value = statelessBeans.get(name);
+        if (value == null) {
+            NameRegistry.Entry entry = names.get(name);
+            if (entry == null || entry.getKind() != NameRegistry.Kind.STATELESS) {
+                throw new IllegalStateException("No proxy found for: " + name);
+            }
+            //The lookup cache was flushed since the client looked the bean up, the class was checked back then
+            value = jndi.lookupCached(name);
+            putStatelessBean(entry, value);
         }
-        checkClass(className, name, value);
-        return createStatefulHandler(name, value);
+        return value;
     }
 
-    private Object lookupRaw(String className, String name) throws NamingException {
-        InitialContext context = new InitialContext();
-        Object value = context.lookup(name);
+    private Object lookupStateful(String className, NameRegistry.Entry entry, long owner) throws NamingException {
+        String name = entry.getName();
+        if (!reserveStatefulSession()) {
+            throw new IllegalStateException("Could not create stateful session for " + name + ", the maximum of " + maxStatefulSessions + " stateful sessions has been reached");
+        }
+        boolean created = false;
+        try {
+            //Each lookup of a stateful session bean creates a new instance, so it must not be cached
+            Object value = jndi.lookup(name);
+            if (className == null) {
+                throw new NamingException("No class specified for " + name);
+            }
+            checkClass(className, name, value);
+            checkRegisteredClass(entry, value);
+            StatefulBeanHandler handler = createStatefulHandler(entry, owner, value);
+            created = true;
+            return handler;
+        } finally {
+            if (!created) {
+                statefulSessionSlots.decrementAndGet();
+            }
+        }
+    }
+
+    private boolean reserveStatefulSession() {
+        while (true) {
+            int max = maxStatefulSessions;
+            int count = statefulSessionSlots.get();
+            if (max > 0 && count >= max) {
+                return false;
+            }
+            if (statefulSessionSlots.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes a stateful session, giving back its slot
+     *
+     * @return {@code true} if it was removed, {@code false} if somebody else removed it first
+     */
+    private boolean removeStatefulSession(StatefulSession session) {
+        if (statefulBeanInstances.remove(session.getId(), session)) {
+            statefulSessionSlots.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private Object lookupRaw(String className, NameRegistry.Entry entry) throws NamingException {
+        String name = entry.getName();
+        Object value = jndi.lookupCached(name);
         if (className != null) {
             checkClass(className, name, value);
         }
+        checkRegisteredClass(entry, value);
         return value;
     }
 
+    private void checkRegisteredClass(NameRegistry.Entry entry, Object value) throws NamingException {
+        if (entry.getClassName() != null) {
+            checkClass(entry.getClassName(), entry.getName(), value);
+        }
+    }
+
     private Class<?> checkClass(String className, String name, Object value) throws NamingException {
         Class<?> clazz;
         try {
-            clazz = Class.forName(className);
+            clazz = classCache.loadClass(className, RemoteViaJMX.class.getClassLoader());
         } catch (ClassNotFoundException e) {
             NamingException ex = new NamingException("Could not find class for " + className + " in loader: "  + e.getMessage());
             ex.setRootCause(e);
             throw ex;
         }
-        if (!clazz.isAssignableFrom(value.getClass())) {
+        if (!classCache.isAssignable(clazz, value.getClass())) {
             throw new NamingException("Expected " + className + " for " + name);
         }
         return clazz;
     }
 
-    private synchronized StatefulBeanHandler createStatefulHandler(String name, Object stateful) {
-        long id = (long)(Math.random() * Long.MAX_VALUE);
-        while (true) {
-            if (!statefulBeanInstances.containsKey(id)) {
-                statefulBeanInstances.put(id, stateful);
-                return new StatefulBeanHandler(name, id);
+    private MethodTable getMethodTable(String name, Object value) {
+        MethodTable table = methodTables.get(name);
+        if (table == null || table.getBeanClass() != value.getClass()) {
+            if (table != null && table.getBeanClass().getClassLoader() != value.getClass().getClassLoader()) {
+                //The bean was redeployed, so let go of the reflection information and classes of the old deployment
+                index.removeClassLoader(table.getBeanClass().getClassLoader());
+                classCache.removeClassLoader(table.getBeanClass().getClassLoader());
+            }
+            //The method ids are stable for a given class, so it does not matter if this races
+            MethodTable replaced = table;
+            table = MethodTable.create(index, value.getClass());
+            methodTables.put(name, table);
+            if (replaced != null) {
+                statistics.removeMethodTable(replaced);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Finds a method in the method table by its signature, without allocating anything
+     *
+     * @return the method id, or {@code -1} if it is not in the table
+     */
+    private int resolveMethodId(String name, MethodTable table, String returnType, String methodName, String[] sig) {
+        long start = System.nanoTime();
+        int methodId = table.getMethodId(MethodUtil.getSignatureHash(returnType, methodName, sig), returnType, methodName, sig);
+        if (methodId >= 0) {
+            statistics.resolve(name, names.get(name), start);
+        }
+        return methodId;
+    }
+
+    /**
+     * Rejects a method id which does not identify the method the client meant, for example since the client got its
+     * method table from a different version of the bean class
+     */
+    private void checkMethodId(String name, MethodTable table, int methodId, long methodHash) {
+        if (!table.isMethod(methodId, methodHash)) {
+            throw new StaleIdException(name, "Method id " + methodId + " does not identify the expected method in " + table.getBeanClass().getName());
+        }
+    }
+
+    private Method resolveMethod(String name, Object value, String returnType, String methodName, String[] sig) {
+        long start = System.nanoTime();
+        Method m;
+        try {
+            m = MethodUtil.getMethod(index, value.getClass(), returnType, methodName, sig);
+        } catch (Exception e) {
+            m = null;
+        }
+        if (m == null) {
+            throw new RuntimeException("Could not find method called " + methodName + " with signature " + Arrays.toString(sig));
+        }
+        statistics.resolve(name, names.get(name), start);
+        return m;
+    }
+
+    /**
+     * Invokes a bean method
+     *
+     * @param method the method
+     * @param invoker the invoker of the method from the method table, or {@code null} to call the method directly
+     */
+    private Object invokeMethod(String name, Method method, MethodInvoker invoker, Object value, Object[] args, LatencyHistogram histogram, boolean stream) throws Exception {
+        Semaphore permit = bulkheads.acquire(name);
+        long start = System.nanoTime();
+        boolean failed = true;
+        Object o;
+        try {
+            o = invoker != null ? invoker.invoke(value, args) : method.invoke(value, args);
+            failed = false;
+        } finally {
+            statistics.invoke(histogram, start, failed);
+            if (permit != null) {
+                permit.release();
+            }
+        }
+        return stream ? resultCursors.wrap(method.getReturnType(), o) : o;
+    }
+
+    private Object invokeStatelessMethod(String name, Method method, MethodInvoker invoker, Object value, Object[] args, LatencyHistogram histogram, boolean stream) throws Exception {
+        ResultCache.Key key = resultCache.getKey(name, method, args);
+        if (key == null) {
+            return invokeMethod(name, method, invoker, value, args, histogram, stream);
+        }
+        Object o = resultCache.get(key);
+        if (o == ResultCache.MISS) {
+            o = invokeMethod(name, method, invoker, value, args, histogram, false);
+            resultCache.put(key, o);
+        }
+        return stream ? resultCursors.wrap(method.getReturnType(), o) : o;
+    }
+
+    private Object invokeRemove(String name, StatefulSession session, Method method, MethodInvoker invoker, Object value, Object[] args, LatencyHistogram histogram, boolean stream) throws Exception {
+        long start = System.nanoTime();
+        Object o = invokeMethod(name, method, invoker, value, args, histogram, stream);
+        if (removeStatefulSession(session)) {
+            notifications.sessionRemoved(session.getOwner(), session.getId());
+        }
+        statistics.remove(name, names.get(name), start);
+        return o;
+    }
+
+    private StatefulBeanHandler createStatefulHandler(NameRegistry.Entry entry, long owner, Object stateful) {
+        String name = entry.getName();
+        long id = sessionIdGenerator.nextId();
+        String[] keys = getMethodTable(name, stateful).getKeys();
+        StatefulSession session = new StatefulSession(id, name, owner, stateful);
+        statefulBeanInstances.put(id, session);
+        idleSessions.add(session, getIdleDeadline(session));
+        if (session.isSerializable()) {
+            passivationWheel.add(session, getPassivationDeadline(session));
+        }
+        return new StatefulBeanHandler(name, entry.getId(), instanceId, id, keys);
+    }
+
+    private StatefulSession getStatefulSession(String name, long sessionId) {
+        StatefulSession session = statefulBeanInstances.get(sessionId);
+        if (session == null) {
+            Long maxIdleTime;
+            synchronized (expiredSessions) {
+                maxIdleTime = expiredSessions.get(sessionId);
+            }
+            if (maxIdleTime != null) {
+                throw new IllegalStateException("Stateful session " + sessionId + " for " + name + " was removed after being idle for more than " + maxIdleTime + "ms");
+            }
+            throw new IllegalStateException("No proxy found for: " + name);
+        }
+        session.touch();
+        return session;
+    }
+
+    private Object acquire(String name, StatefulSession session) {
+        boolean passivated = session.isPassivated();
+        Object value;
+        try {
+            value = session.acquire(passivationStore);
+        } catch (Exception e) {
+            if (removeStatefulSession(session)) {
+                session.discard(passivationStore);
+                notifications.sessionRemoved(session.getOwner(), session.getId());
+            }
+            throw new IllegalStateException("Could not activate stateful session " + session.getId() + " for " + name, e);
+        }
+        if (value == null) {
+            //It expired after we looked it up
+            throw new IllegalStateException("Stateful session " + session.getId() + " for " + name + " was removed after being idle for more than " + statefulMaxIdleTime + "ms");
+        }
+        if (passivated) {
+            activationCount.incrementAndGet();
+        }
+        return value;
+    }
+
+    private synchronized PassivationStore getPassivationStore() {
+        if (passivationStore == null && reaper != null) {
+            String dir = passivationDirectory;
+            try {
+                passivationStore = PassivationStore.create(dir == null ? null : new File(dir), passivationStoreSize);
+            } catch (Exception e) {
+                log.warn("Could not create passivation store, disabling passivation", e);
+                statefulPassivationIdleTime = 0;
+            }
+        }
+        return passivationStore;
+    }
+
+    private long getPassivationDeadline(StatefulSession session) {
+        long idleTime = statefulPassivationIdleTime;
+        if (idleTime <= 0 || session.isPassivated()) {
+            //Check again in a wheel revolution in case passivation gets enabled, or the session was activated
+            return System.currentTimeMillis() + REAPER_TICK_MILLIS * REAPER_WHEEL_SIZE;
+        }
+        return session.getLastAccessTime() + idleTime;
+    }
+
+    private long getIdleDeadline(StatefulSession session) {
+        long maxIdleTime = statefulMaxIdleTime;
+        if (maxIdleTime <= 0) {
+            //Eviction is disabled, check again in a wheel revolution in case it gets enabled
+            return System.currentTimeMillis() + REAPER_TICK_MILLIS * REAPER_WHEEL_SIZE;
+        }
+        return session.getLastAccessTime() + maxIdleTime;
+    }
+
+    private class IdleSessionListener implements IdleTimeoutWheel.Listener<StatefulSession> {
+        public long getDeadline(StatefulSession session) {
+            if (statefulBeanInstances.get(session.getId()) != session) {
+                //Already removed
+                return -1;
+            }
+            return getIdleDeadline(session);
+        }
+
+        public void expired(StatefulSession session) {
+            if (!session.expire()) {
+                //There are invocations in progress, which touch the session when they are done
+                idleSessions.add(session, getIdleDeadline(session));
+                return;
+            }
+            if (removeStatefulSession(session)) {
+                session.discard(passivationStore);
+                synchronized (expiredSessions) {
+                    expiredSessions.put(session.getId(), statefulMaxIdleTime);
+                }
+                expiredSessionCount.incrementAndGet();
+                notifications.sessionRemoved(session.getOwner(), session.getId());
+                log.debug("Removed stateful session " + session.getId() + " for " + session.getName() + " after being idle");
+            }
+        }
+    }
+
+    private class PassivationListener implements IdleTimeoutWheel.Listener<StatefulSession> {
+        public long getDeadline(StatefulSession session) {
+            if (statefulBeanInstances.get(session.getId()) != session) {
+                //Already removed
+                return -1;
+            }
+            return getPassivationDeadline(session);
+        }
+
+        public void expired(StatefulSession session) {
+            PassivationStore store = getPassivationStore();
+            if (store == null) {
+                passivationWheel.add(session, getPassivationDeadline(session));
+                return;
+            }
+            try {
+                if (session.passivate(store, passivationMinSize)) {
+                    if (statefulBeanInstances.get(session.getId()) != session) {
+                        //Removed while we were passivating it
+                        session.discard(store);
+                        return;
+                    }
+                    passivationCount.incrementAndGet();
+                    log.debug("Passivated stateful session " + session.getId() + " for " + session.getName());
+                }
+            } catch (IOException e) {
+                //Something it refers to is not serializable, so it has to stay on the heap
+                log.debug("Could not passivate stateful session " + session.getId() + " for " + session.getName(), e);
+                return;
+            }
+            if (!session.isPassivatable()) {
+                log.debug("Not passivating stateful session " + session.getId() + " for " + session.getName() + " since it only serializes to a handle");
+                return;
             }
-            id = (long)(Math.random() * Long.MAX_VALUE);
+            long deadline = getPassivationDeadline(session);
+            //It was in use, or there was no room in the store
+            passivationWheel.add(session, Math.max(deadline, System.currentTimeMillis() + statefulPassivationIdleTime));
         }
     }
 
@@ -21,8 +21,16 @@
 */
 package org.jboss.as.remote.jmx.mbean;
 
+import java.io.IOException;
+
 import javax.naming.NamingException;
 
+import org.jboss.as.remote.jmx.common.Invocation;
+import org.jboss.as.remote.jmx.common.InvocationResult;
+import org.jboss.as.remote.jmx.common.MethodUtil;
+import org.jboss.as.remote.jmx.common.ResultChunk;
+import org.jboss.as.remote.jmx.common.StaleIdException;
+
 /**
  * Configures an MBean to allow JNDI lookups and EJB invocations from outside the JVM.
  * Include as a SAR within your EAR to use it, and grant access via the setXXXNames() methods
@@ -33,6 +41,12 @@ import javax.naming.NamingException;
 public interface RemoteViaJMXMBean {
     void start();
 
+    /**
+     * Stops the MBean, removing all the stateful sessions. The ids handed out at lookup are no longer accepted
+     * once it is started again, see {@link #getInstanceId()}
+     */
+    void stop();
+
     /**
      * A comma-separated list of JNDI names for Stateless session beans
      * that will be accessible remotely
@@ -41,6 +55,13 @@ public interface RemoteViaJMXMBean {
      */
     void setStatelessBeanNames(String names);
 
+    /**
+     * Get the JNDI names for Stateless session beans that are accessible remotely
+     *
+     * @return a comma-separated list of the jndi names
+     */
+    String getStatelessBeanNames();
+
     /**
      * A comma-separated list of JNDI names for Stateful session beans
      * that will be accessible remotely
@@ -49,6 +70,13 @@ public interface RemoteViaJMXMBean {
      */
     void setStatefulBeanNames(String names);
 
+    /**
+     * Get the JNDI names for Stateful session beans that are accessible remotely
+     *
+     * @return a comma-separated list of the jndi names
+     */
+    String getStatefulBeanNames();
+
     /**
      * A comma-separated list of JNDI names for general things bound in JNDI
      * which need no special processing (such as JMS ConnectionFactories and Queues)
@@ -57,6 +85,448 @@ public interface RemoteViaJMXMBean {
      */
     void setRawNames(String names);
 
+    /**
+     * Get the JNDI names for general things bound in JNDI that are accessible remotely
+     *
+     * @return a comma-separated list of the jndi names
+     */
+    String getRawNames();
+
+    /**
+     * Makes a JNDI name accessible remotely, or changes how an accessible one is handled, without redeploying
+     *
+     * @param kind {@code stateless}, {@code stateful} or {@code raw}
+     * @param name the jndi name
+     * @param className the name of a class which the bound value must be an instance of, in addition to the class
+     * the client asks for. May be {@code null}
+     */
+    void addName(String kind, String name, String className);
+
+    /**
+     * Stops a JNDI name from being accessible remotely. Stateful sessions already created for it remain usable until
+     * removed
+     *
+     * @param name the jndi name
+     * @return {@code true} if the name was accessible
+     */
+    boolean removeName(String name);
+
+    /**
+     * The time in milliseconds a serializable stateful session may be idle before it is passivated to a
+     * memory-mapped file, it is activated again on its next invocation. Defaults to {@code 0}, which means never
+     *
+     * @param idleTime the idle time in milliseconds
+     */
+    void setStatefulPassivationIdleTime(long idleTime);
+
+    /**
+     * Get the time in milliseconds a serializable stateful session may be idle before it is passivated
+     *
+     * @return the idle time in milliseconds
+     */
+    long getStatefulPassivationIdleTime();
+
+    /**
+     * The size in bytes of the file passivated stateful sessions are stored in. Idle sessions which do not fit stay
+     * on the heap. Only takes effect when the file is created, which is the first time a session is passivated
+     * after being started. Defaults to 64MB
+     *
+     * @param size the size in bytes
+     */
+    void setPassivationStoreSize(long size);
+
+    /**
+     * Get the size in bytes of the file passivated stateful sessions are stored in
+     *
+     * @return the size in bytes
+     */
+    long getPassivationStoreSize();
+
+    /**
+     * The minimum size in bytes a stateful session must serialize to for it to be passivated. The instance of a
+     * stateful session bean is normally the EJB container's proxy, which serializes to a small handle while the bean's
+     * state stays in the container, so passivating it frees almost no heap. Such sessions are kept on the heap, and
+     * the container's own passivation should be used for the beans instead. Defaults to {@code 1024}
+     *
+     * @param size the size in bytes
+     */
+    void setPassivationMinSize(int size);
+
+    /**
+     * Get the minimum size in bytes a stateful session must serialize to for it to be passivated
+     *
+     * @return the size in bytes
+     */
+    int getPassivationMinSize();
+
+    /**
+     * The directory to create the file passivated stateful sessions are stored in. Defaults to the
+     * {@code java.io.tmpdir} directory
+     *
+     * @param directory the directory
+     */
+    void setPassivationDirectory(String directory);
+
+    /**
+     * Get the directory to create the file passivated stateful sessions are stored in
+     *
+     * @return the directory, or {@code null} for the default
+     */
+    String getPassivationDirectory();
+
+    /**
+     * Get the number of stateful sessions which are currently passivated
+     *
+     * @return the number of passivated sessions
+     */
+    int getPassivatedStatefulSessionCount();
+
+    /**
+     * Get the number of bytes of the passivation store in use
+     *
+     * @return the number of bytes
+     */
+    long getPassivationStoreUsed();
+
+    /**
+     * Get the number of times stateful sessions have been passivated
+     *
+     * @return the number of passivations
+     */
+    long getPassivationCount();
+
+    /**
+     * Get the number of times stateful sessions have been activated
+     *
+     * @return the number of activations
+     */
+    long getActivationCount();
+
+    /**
+     * Get an id which changes each time the MBean is started. Clients poll it to detect that they are talking to
+     * a restarted MBean, whose stateful sessions are all gone
+     *
+     * @return the id, or {@code 0} while the MBean is stopped
+     */
+    long getInstanceId();
+
+    /**
+     * The minimum time in milliseconds between notifications about removed stateful sessions and changed names,
+     * events in between are sent together. The notifications are sent by the session reaper, so this is rounded up
+     * to its tick of a second. Defaults to {@code 1000}
+     *
+     * @param interval the interval in milliseconds
+     * @see org.jboss.as.remote.jmx.common.ServerNotifications
+     */
+    void setNotificationInterval(long interval);
+
+    /**
+     * Get the minimum time in milliseconds between notifications about removed stateful sessions and changed names
+     *
+     * @return the interval in milliseconds
+     */
+    long getNotificationInterval();
+
+    /**
+     * Whether to warm up in the background when started, see {@link #warmUp()}. Defaults to {@code false}
+     *
+     * @param warmUpOnStart {@code true} to warm up when started
+     */
+    void setWarmUpOnStart(boolean warmUpOnStart);
+
+    /**
+     * Get whether to warm up in the background when started
+     *
+     * @return {@code true} to warm up when started
+     */
+    boolean isWarmUpOnStart();
+
+    /**
+     * The number of threads used to warm up. Defaults to {@code 4}
+     *
+     * @param threads the number of threads
+     */
+    void setWarmUpThreads(int threads);
+
+    /**
+     * Get the number of threads used to warm up
+     *
+     * @return the number of threads
+     */
+    int getWarmUpThreads();
+
+    /**
+     * The time in milliseconds from the start of a warm up during which the names which failed are retried with an
+     * increasing delay, since the beans may not have been bound yet when this MBean starts. If {@code <= 0} each name
+     * is tried once. Defaults to {@code 60000}
+     *
+     * @param timeout the timeout in milliseconds
+     */
+    void setWarmUpTimeout(long timeout);
+
+    /**
+     * Get the time in milliseconds during which the names which failed to warm up are retried
+     *
+     * @return the timeout in milliseconds
+     */
+    long getWarmUpTimeout();
+
+    /**
+     * Get how long the last warm up took
+     *
+     * @return the duration in milliseconds, or {@code -1} if it has not completed
+     */
+    long getWarmUpDuration();
+
+    /**
+     * Get the names which could not be warmed up by the last warm up within the warm up timeout, along with the reason
+     *
+     * @return the failures
+     */
+    String[] getWarmUpFailures();
+
+    /**
+     * Looks up the stateless session beans and raw names, and prepares the reflection information and method tables
+     * for the beans, so that the first clients do not have to wait for that. Stateful session beans are not warmed up
+     * since each lookup creates a new session
+     */
+    void warmUp();
+
+    /**
+     * The time in milliseconds a stateful session may be idle before it is removed.
+     * If {@code <= 0}, which is the default, idle sessions are never removed
+     *
+     * @param maxIdleTime the maximum idle time in milliseconds
+     */
+    void setStatefulMaxIdleTime(long maxIdleTime);
+
+    /**
+     * Get the time in milliseconds a stateful session may be idle before it is removed
+     *
+     * @return the maximum idle time in milliseconds
+     */
+    long getStatefulMaxIdleTime();
+
+    /**
+     * The maximum number of stateful sessions. Lookups of stateful session beans fail once it is reached.
+     * If {@code <= 0}, which is the default, the number is unbounded
+     *
+     * @param maxSessions the maximum number of stateful sessions
+     */
+    void setMaxStatefulSessions(int maxSessions);
+
+    /**
+     * Get the maximum number of stateful sessions
+     *
+     * @return the maximum number of stateful sessions
+     */
+    int getMaxStatefulSessions();
+
+    /**
+     * Get the current number of stateful sessions
+     *
+     * @return the number of stateful sessions
+     */
+    int getStatefulSessionCount();
+
+    /**
+     * Get the number of stateful sessions which have been removed for being idle
+     *
+     * @return the number of expired stateful sessions
+     */
+    long getExpiredStatefulSessionCount();
+
+    /**
+     * A comma-separated list of {@code <jndi name>=<limit>} giving the maximum number of invocations of each
+     * bean that may be in progress at the same time. Further invocations wait for one to finish, and fail with a
+     * {@link org.jboss.as.remote.jmx.common.BeanBusyException} if none does within {@link #setBeanConcurrencyMaxWaitTime(long)}
+     *
+     * @param limits the limits
+     */
+    void setBeanConcurrencyLimits(String limits);
+
+    /**
+     * Get the maximum number of invocations of each bean that may be in progress at the same time
+     *
+     * @return a comma-separated list of {@code <jndi name>=<limit>}
+     */
+    String getBeanConcurrencyLimits();
+
+    /**
+     * The maximum number of invocations in progress at the same time for beans not listed in
+     * {@link #setBeanConcurrencyLimits(String)}. If {@code <= 0}, which is the default, the number is unbounded
+     *
+     * @param limit the limit
+     */
+    void setDefaultBeanConcurrencyLimit(int limit);
+
+    /**
+     * Get the maximum number of invocations in progress at the same time for beans without their own limit
+     *
+     * @return the limit
+     */
+    int getDefaultBeanConcurrencyLimit();
+
+    /**
+     * The time in milliseconds an invocation waits for another invocation of the same bean to finish once the
+     * bean's concurrency limit is reached. If {@code <= 0} it is rejected straight away. Defaults to {@code 1000}
+     *
+     * @param maxWaitTime the maximum wait time in milliseconds
+     */
+    void setBeanConcurrencyMaxWaitTime(long maxWaitTime);
+
+    /**
+     * Get the time in milliseconds an invocation waits once the bean's concurrency limit is reached
+     *
+     * @return the maximum wait time in milliseconds
+     */
+    long getBeanConcurrencyMaxWaitTime();
+
+    /**
+     * Get the number of invocations rejected because the bean's concurrency limit was reached
+     *
+     * @return the number of rejected invocations
+     */
+    long getRejectedInvocationCount();
+
+    /**
+     * A comma-separated list of stateless session bean methods whose results may be cached, each of the form
+     * {@code <jndi name>#<method name>}, covering all overloads of the method. Only use for methods which have no
+     * side effects and whose parameters implement {@code equals()} and {@code hashCode()} by value.
+     * Setting this clears the cache
+     *
+     * @param methods the cacheable methods
+     */
+    void setCacheableMethods(String methods);
+
+    /**
+     * Get the stateless session bean methods whose results may be cached
+     *
+     * @return a comma-separated list of {@code <jndi name>#<method name>}
+     */
+    String getCacheableMethods();
+
+    /**
+     * The maximum number of cached results. Defaults to {@code 1000}
+     *
+     * @param maxSize the maximum number of cached results
+     */
+    void setResultCacheMaxSize(int maxSize);
+
+    /**
+     * Get the maximum number of cached results
+     *
+     * @return the maximum number of cached results
+     */
+    int getResultCacheMaxSize();
+
+    /**
+     * The time in milliseconds a result is cached for. Defaults to {@code 60000}
+     *
+     * @param timeToLive the time to live in milliseconds
+     */
+    void setResultCacheTimeToLive(long timeToLive);
+
+    /**
+     * Get the time in milliseconds a result is cached for
+     *
+     * @return the time to live in milliseconds
+     */
+    long getResultCacheTimeToLive();
+
+    /**
+     * Get the number of cached results
+     *
+     * @return the number of cached results
+     */
+    int getResultCacheSize();
+
+    /**
+     * Get the number of invocations of cacheable methods which were answered from the cache
+     *
+     * @return the number of hits
+     */
+    long getResultCacheHitCount();
+
+    /**
+     * Get the number of invocations of cacheable methods which had to call the bean
+     *
+     * @return the number of misses
+     */
+    long getResultCacheMissCount();
+
+    /**
+     * Get the number of cached results which were removed to make room for others
+     *
+     * @return the number of evictions
+     */
+    long getResultCacheEvictionCount();
+
+    /**
+     * Removes all cached results
+     */
+    void clearResultCache();
+
+    /**
+     * The maximum number of bytes sent in one chunk of a streamed {@code byte[]} or {@link java.io.InputStream} result.
+     * {@code byte[]} results larger than this are streamed. Defaults to {@code 65536}
+     *
+     * @param chunkSize the chunk size in bytes
+     */
+    void setResultChunkSize(int chunkSize);
+
+    /**
+     * Get the maximum number of bytes sent in one chunk of a streamed binary result
+     *
+     * @return the chunk size in bytes
+     */
+    int getResultChunkSize();
+
+    /**
+     * The maximum number of elements sent in one chunk of a streamed collection or {@link java.util.Iterator} result.
+     * Collection results with more elements than this are streamed. Defaults to {@code 1000}
+     *
+     * @param chunkElements the number of elements
+     */
+    void setResultChunkElements(int chunkElements);
+
+    /**
+     * Get the maximum number of elements sent in one chunk of a streamed collection result
+     *
+     * @return the number of elements
+     */
+    int getResultChunkElements();
+
+    /**
+     * The time in milliseconds a streamed result may go without the client reading from it before it is discarded.
+     * Defaults to {@code 300000}
+     *
+     * @param maxIdleTime the maximum idle time in milliseconds
+     */
+    void setResultCursorMaxIdleTime(long maxIdleTime);
+
+    /**
+     * Get the time in milliseconds a streamed result may go without being read before it is discarded
+     *
+     * @return the maximum idle time in milliseconds
+     */
+    long getResultCursorMaxIdleTime();
+
+    /**
+     * Get the number of streamed results which have not been read to the end yet
+     *
+     * @return the number of result cursors
+     */
+    int getResultCursorCount();
+
+    /**
+     * Clears the cached results of JNDI lookups of stateless session beans and raw names, so that they are looked up
+     * again, along with the cached classes used to check the type of looked up values and the reflection information
+     * about the beans.
+     * Use after redeploying something bound under one of those names
+     */
+    void flushLookupCache();
+
     /**
      * Looks up something via JNDI
      *
@@ -65,6 +535,17 @@ public interface RemoteViaJMXMBean {
      */
     Object lookup(String className, String name) throws NamingException;
 
+    /**
+     * Looks up something via JNDI on behalf of a client which subscribes to the notifications with a
+     * {@link org.jboss.as.remote.jmx.common.SessionOwnerFilter}, so that it is only told about the removal of the
+     * stateful sessions it looked up
+     *
+     * @param className the expected class name, may be {@code null} for non-ejb lookups
+     * @param name the jndi name
+     * @param owner the id of the client
+     */
+    Object lookup(String className, String name, long owner) throws NamingException;
+
     /**
      * Invokes a method on a stateless session bean
      *
@@ -89,4 +570,60 @@ public interface RemoteViaJMXMBean {
      * @param args the actual arguments used for calling the method
      */
     Object invokeStateful(String name, String declaringClassName, String returnType, String methodName, long sessionId, String[] sig, Object[] args) throws Exception;
+
+    /**
+     * Invokes a method on a stateless session bean using the method table returned by {@link #lookup(String, String)}
+     *
+     * @param name the JNDI name of the slsb
+     * @param methodId the id of the method in the method table
+     * @param methodHash the signature hash of the method, see {@link MethodUtil#getSignatureHash(String, String, String[])}
+     * @param args the actual arguments used for calling the method
+     * @throws StaleIdException if the method id does not identify the method with the given signature hash
+     */
+    Object invokeStatelessById(String name, int methodId, long methodHash, Object[] args) throws Exception;
+
+    /**
+     * Invokes a method on a stateful session bean using the method table returned by {@link #lookup(String, String)}
+     *
+     * @param name the JNDI name of the sfsb
+     * @param sessionId the id of the session bean. Maintained by this mbean and initialized during the call to {@link #lookup(String, String)}
+     * @param methodId the id of the method in the method table
+     * @param methodHash the signature hash of the method, see {@link MethodUtil#getSignatureHash(String, String, String[])}
+     * @param args the actual arguments used for calling the method
+     * @throws StaleIdException if the method id does not identify the method with the given signature hash
+     */
+    Object invokeStatefulById(String name, long sessionId, int methodId, long methodHash, Object[] args) throws Exception;
+
+    /**
+     * Invokes a method on a stateless or stateful session bean. Unlike the other invoke operations, large
+     * {@code byte[]}, {@link java.io.InputStream}, collection and {@link java.util.Iterator} results are streamed,
+     * in which case the first {@link ResultChunk} is returned in place of the result
+     *
+     * @param invocation the invocation
+     */
+    Object invoke(Invocation invocation) throws Exception;
+
+    /**
+     * Performs a number of invocations on stateless or stateful session beans in one call
+     *
+     * @param invocations the invocations
+     * @return the result of each invocation, in the same order as the invocations. If an invocation
+     * failed its result contains the exception, and the remaining invocations are still performed
+     */
+    InvocationResult[] invokeBatch(Invocation[] invocations);
+
+    /**
+     * Reads the next chunk of a streamed result. The first chunk is returned by the invocation in place of the result
+     *
+     * @param cursorId the cursor id from the previous chunk
+     * @return the next chunk
+     */
+    ResultChunk nextResultChunk(long cursorId) throws IOException;
+
+    /**
+     * Discards a streamed result which the client does not want to read to the end
+     *
+     * @param cursorId the cursor id from the last chunk read
+     */
+    void closeResultCursor(long cursorId);
 }
@@ -0,0 +1,213 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.mbean;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jboss.as.remote.jmx.common.LatencyHistogram;
+import org.jboss.as.remote.jmx.common.MethodTable;
+import org.jboss.as.remote.jmx.common.MethodUtil;
+
+/**
+ * Collects the statistics of a {@link RemoteViaJMX} instance
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class RemoteViaJMXStatistics implements RemoteViaJMXStatisticsMBean {
+    private static final int LOOKUPS = 0;
+    private static final int INVOCATIONS = 8;
+    private static final int FAILED_INVOCATIONS = 16;
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<MethodTable, AtomicReferenceArray<LatencyHistogram>> methodHistograms = new ConcurrentHashMap<MethodTable, AtomicReferenceArray<LatencyHistogram>>();
+    //Each counter is on its own cache line
+    private final AtomicLongArray counters = new AtomicLongArray(24);
+
+    public long getLookupCount() {
+        return counters.get(LOOKUPS);
+    }
+
+    public long getInvocationCount() {
+        return counters.get(INVOCATIONS);
+    }
+
+    public long getFailedInvocationCount() {
+        return counters.get(FAILED_INVOCATIONS);
+    }
+
+    public String[] getOperations() {
+        return new TreeMap<String, LatencyHistogram>(histograms).keySet().toArray(new String[0]);
+    }
+
+    public String[] getLatencySummary() {
+        Map<String, LatencyHistogram> sorted = new TreeMap<String, LatencyHistogram>(histograms);
+        String[] summary = new String[sorted.size()];
+        int i = 0;
+        for (Map.Entry<String, LatencyHistogram> entry : sorted.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            summary[i++] = entry.getKey() + ": count=" + histogram.getCount() +
+                    " p50=" + toMicros(histogram.getPercentile(50)) +
+                    "us p99=" + toMicros(histogram.getPercentile(99)) +
+                    "us p999=" + toMicros(histogram.getPercentile(99.9)) +
+                    "us max=" + toMicros(histogram.getMax()) + "us";
+        }
+        return summary;
+    }
+
+    public long getLatencyPercentile(String operation, double percentile) {
+        LatencyHistogram histogram = histograms.get(operation);
+        if (histogram == null) {
+            throw new IllegalArgumentException("No statistics for " + operation);
+        }
+        return toMicros(histogram.getPercentile(percentile));
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        for (int i = 0 ; i < counters.length() ; i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    void lookup(NameRegistry.Entry entry, long startNanos) {
+        counters.incrementAndGet(LOOKUPS);
+        LatencyHistogram histogram = entry.getLookupHistogram();
+        if (histogram == null) {
+            //An entry replaced by a change of kind gets the same histogram from the map again
+            histogram = getHistogram("lookup " + entry.getName());
+            entry.setLookupHistogram(histogram);
+        }
+        histogram.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records the time taken to resolve a method sent by signature
+     *
+     * @param name the JNDI name
+     * @param entry the registry entry of the name, or {@code null} if it was removed while a stateful session is still in use
+     */
+    void resolve(String name, NameRegistry.Entry entry, long startNanos) {
+        LatencyHistogram histogram = entry == null ? null : entry.getResolveHistogram();
+        if (histogram == null) {
+            histogram = getHistogram("resolve " + name);
+            if (entry != null) {
+                entry.setResolveHistogram(histogram);
+            }
+        }
+        histogram.record(System.nanoTime() - startNanos);
+    }
+
+    void invoke(LatencyHistogram histogram, long startNanos, boolean failed) {
+        counters.incrementAndGet(INVOCATIONS);
+        if (failed) {
+            counters.incrementAndGet(FAILED_INVOCATIONS);
+        }
+        histogram.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records the time taken by a {@link javax.ejb.Remove} method
+     *
+     * @param name the JNDI name
+     * @param entry the registry entry of the name, or {@code null} if it was removed while a stateful session is still in use
+     */
+    void remove(String name, NameRegistry.Entry entry, long startNanos) {
+        LatencyHistogram histogram = entry == null ? null : entry.getRemoveHistogram();
+        if (histogram == null) {
+            histogram = getHistogram("remove " + name);
+            if (entry != null) {
+                entry.setRemoveHistogram(histogram);
+            }
+        }
+        histogram.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Get the invocation histogram of a method identified by its key, used for invocations by signature
+     */
+    LatencyHistogram getMethodHistogram(String name, String methodKey) {
+        return getHistogram("invoke " + name + " " + methodKey);
+    }
+
+    /**
+     * Get the invocation histogram of a method in a method table, used for invocations by method id.
+     * The histograms are cached per table so that no operation name needs to be built per invocation, and are only
+     * created once a method is invoked since most beans have far more methods than get called. The table must be
+     * passed to {@link #removeMethodTable(MethodTable)} once it is replaced, since it holds on to the bean class
+     */
+    LatencyHistogram getMethodHistogram(String name, MethodTable table, int methodId) {
+        AtomicReferenceArray<LatencyHistogram> tableHistograms = methodHistograms.get(table);
+        if (tableHistograms == null) {
+            tableHistograms = new AtomicReferenceArray<LatencyHistogram>(table.getMethodCount());
+            AtomicReferenceArray<LatencyHistogram> existing = methodHistograms.putIfAbsent(table, tableHistograms);
+            if (existing != null) {
+                tableHistograms = existing;
+            }
+        }
+        LatencyHistogram histogram = tableHistograms.get(methodId);
+        if (histogram == null) {
+            //getHistogram() makes sure that racing threads end up with the same one
+            histogram = getMethodHistogram(name, MethodUtil.getMethodKey(table.getMethod(methodId)));
+            tableHistograms.set(methodId, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Forgets the cached histograms of a method table which is no longer used, so that it and the class loader of
+     * its bean class can be garbage collected. The histograms themselves are kept under their operation names
+     *
+     * @param table the table
+     */
+    void removeMethodTable(MethodTable table) {
+        methodHistograms.remove(table);
+    }
+
+    void clearMethodTables() {
+        methodHistograms.clear();
+    }
+
+    private LatencyHistogram getHistogram(String operation) {
+        LatencyHistogram histogram = histograms.get(operation);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            LatencyHistogram existing = histograms.putIfAbsent(operation, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
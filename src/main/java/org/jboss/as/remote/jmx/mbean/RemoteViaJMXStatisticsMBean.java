@@ -0,0 +1,85 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.mbean;
+
+/**
+ * Statistics about the lookups and invocations handled by a {@link RemoteViaJMXMBean}. It is registered
+ * under the object name of that MBean with {@code service=statistics} appended.
+ * <p/>
+ * Latencies are tracked per operation, where the operations are named {@code lookup <jndi name>},
+ * {@code resolve <jndi name>} for finding the method to invoke from its signature,
+ * {@code invoke <jndi name> <method key>} and {@code remove <jndi name>} for calls to {@code @Remove} methods.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public interface RemoteViaJMXStatisticsMBean {
+
+    /**
+     * Get the total number of lookups
+     *
+     * @return the number of lookups
+     */
+    long getLookupCount();
+
+    /**
+     * Get the total number of bean invocations
+     *
+     * @return the number of invocations
+     */
+    long getInvocationCount();
+
+    /**
+     * Get the total number of bean invocations which threw an exception
+     *
+     * @return the number of failed invocations
+     */
+    long getFailedInvocationCount();
+
+    /**
+     * Get the names of all operations for which latencies have been recorded
+     *
+     * @return the operation names
+     */
+    String[] getOperations();
+
+    /**
+     * Get a summary of the count, p50, p99, p999 and max latency in microseconds of every operation
+     *
+     * @return one line per operation
+     */
+    String[] getLatencySummary();
+
+    /**
+     * Get the latency of an operation at a given percentile
+     *
+     * @param operation the operation name as returned by {@link #getOperations()}
+     * @param percentile the percentile, between {@code 0} and {@code 100}
+     * @return the latency in microseconds
+     */
+    long getLatencyPercentile(String operation, double percentile);
+
+    /**
+     * Clears all statistics
+     */
+    void reset();
+}
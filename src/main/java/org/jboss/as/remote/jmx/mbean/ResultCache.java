@@ -0,0 +1,301 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.mbean;
+
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the results of stateless session bean methods which have been configured as cacheable, keyed by the
+ * bean name, the method and the arguments. The arguments must implement {@code equals()} and {@code hashCode()}
+ * by value. Entries expire after a time to live, and the cache is split into segments, each evicting its least
+ * recently used entry once full.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+final class ResultCache {
+    static final int DEFAULT_MAX_SIZE = 1000;
+    static final long DEFAULT_TIME_TO_LIVE = 60000;
+
+    /** Returned by {@link #get(Key)} if there is no cached result */
+    static final Object MISS = new Object();
+
+    private static final int SEGMENTS = 16;
+    private static final Object NULL_VALUE = new Object();
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private volatile Map<String, Set<String>> cacheableMethods = Collections.emptyMap();
+    private volatile long timeToLive = DEFAULT_TIME_TO_LIVE;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    ResultCache() {
+        for (int i = 0 ; i < SEGMENTS ; i++) {
+            segments[i] = new Segment();
+        }
+        setMaxSize(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Sets the cacheable methods
+     *
+     * @param methods a comma-separated list of {@code <jndi name>#<method name>}, which covers all overloads of the method
+     */
+    void setCacheableMethods(String methods) {
+        Map<String, Set<String>> map = new HashMap<String, Set<String>>();
+        if (methods != null && methods.trim().length() > 0) {
+            for (String s : methods.split(",")) {
+                s = s.trim();
+                int index = s.lastIndexOf('#');
+                if (index <= 0 || index == s.length() - 1) {
+                    throw new IllegalArgumentException("Cacheable method '" + s + "' is not of the form <jndi name>#<method name>");
+                }
+                String name = s.substring(0, index);
+                Set<String> names = map.get(name);
+                if (names == null) {
+                    names = new HashSet<String>();
+                    map.put(name, names);
+                }
+                names.add(s.substring(index + 1));
+            }
+        }
+        cacheableMethods = map;
+        clear();
+    }
+
+    String getCacheableMethods() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Set<String>> entry : cacheableMethods.entrySet()) {
+            for (String method : entry.getValue()) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(entry.getKey()).append('#').append(method);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the key used to cache the result of an invocation
+     *
+     * @param name the JNDI name of the bean
+     * @param m the method
+     * @param args the arguments
+     * @return the key, or {@code null} if the method is not cacheable
+     */
+    Key getKey(String name, Method m, Object[] args) {
+        Set<String> methods = cacheableMethods.get(name);
+        if (methods == null || !methods.contains(m.getName())) {
+            return null;
+        }
+        Class<?> type = m.getReturnType();
+        if (type == Void.TYPE || type == InputStream.class || type == Iterator.class) {
+            //Nothing to cache, or it can only be read once
+            return null;
+        }
+        return new Key(name, m, args);
+    }
+
+    /**
+     * Gets a cached result
+     *
+     * @param key the key
+     * @return the result, which may be {@code null}, or {@link #MISS} if not cached
+     */
+    Object get(Key key) {
+        Object value = segmentFor(key).get(key, System.currentTimeMillis());
+        if (value == null) {
+            misses.incrementAndGet();
+            return MISS;
+        }
+        hits.incrementAndGet();
+        return value == NULL_VALUE ? null : value;
+    }
+
+    void put(Key key, Object value) {
+        segmentFor(key).put(key, new CachedResult(value == null ? NULL_VALUE : value, System.currentTimeMillis() + timeToLive));
+    }
+
+    void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    int getMaxSize() {
+        return segments[0].getMaxSize() * SEGMENTS;
+    }
+
+    void setMaxSize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive");
+        }
+        int segmentSize = (maxSize + SEGMENTS - 1) / SEGMENTS;
+        for (Segment segment : segments) {
+            segment.setMaxSize(segmentSize);
+        }
+    }
+
+    long getTimeToLive() {
+        return timeToLive;
+    }
+
+    void setTimeToLive(long timeToLive) {
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("Time to live must be positive");
+        }
+        this.timeToLive = timeToLive;
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    static final class Key {
+        private final String name;
+        private final Method method;
+        private final Object[] args;
+        private final int hash;
+
+        private Key(String name, Method method, Object[] args) {
+            this.name = name;
+            this.method = method;
+            this.args = args;
+            this.hash = 31 * (31 * name.hashCode() + method.hashCode()) + Arrays.deepHashCode(args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj instanceof Key == false) {
+                return false;
+            }
+            Key other = (Key)obj;
+            return hash == other.hash && name.equals(other.name) && method.equals(other.method) && Arrays.deepEquals(args, other.args);
+        }
+    }
+
+    private static final class CachedResult {
+        private final Object value;
+        private final long expiry;
+
+        CachedResult(Object value, long expiry) {
+            this.value = value;
+            this.expiry = expiry;
+        }
+    }
+
+    private final class Segment {
+        private int maxSize;
+        private final LinkedHashMap<Key, CachedResult> entries = new LinkedHashMap<Key, CachedResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        synchronized Object get(Key key, long now) {
+            CachedResult entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiry <= now) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+
+        synchronized void put(Key key, CachedResult entry) {
+            entries.put(key, entry);
+        }
+
+        synchronized void clear() {
+            entries.clear();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized int getMaxSize() {
+            return maxSize;
+        }
+
+        synchronized void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+            Iterator<Key> it = entries.keySet().iterator();
+            while (entries.size() > maxSize && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+}
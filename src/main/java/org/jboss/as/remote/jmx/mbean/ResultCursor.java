@@ -0,0 +1,136 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.mbean;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import org.jboss.as.remote.jmx.common.ResultChunk;
+
+/**
+ * A large result held on behalf of a remote client, which reads it a chunk at a time
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+final class ResultCursor {
+    private static final Object[] NO_ELEMENTS = new Object[0];
+
+    private final long id;
+    private final InputStream in;
+    private final Iterator<?> iterator;
+    private volatile long lastAccessTime;
+    //A byte read ahead to find out if the stream is exhausted, or -1
+    private int lookahead = -1;
+
+    ResultCursor(long id, InputStream in) {
+        this(id, in, null);
+    }
+
+    ResultCursor(long id, Iterator<?> iterator) {
+        this(id, null, iterator);
+    }
+
+    private ResultCursor(long id, InputStream in, Iterator<?> iterator) {
+        this.id = id;
+        this.in = in;
+        this.iterator = iterator;
+        this.lastAccessTime = System.currentTimeMillis();
+    }
+
+    long getId() {
+        return id;
+    }
+
+    long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    /**
+     * Reads the next chunk
+     *
+     * @param chunkSize the maximum number of bytes in a chunk of a binary result
+     * @param chunkElements the maximum number of elements in a chunk of any other result
+     * @return the chunk
+     */
+    synchronized ResultChunk next(int chunkSize, int chunkElements) throws IOException {
+        lastAccessTime = System.currentTimeMillis();
+        if (in != null) {
+            return nextBytes(chunkSize);
+        }
+        return nextElements(chunkElements);
+    }
+
+    void close() {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private ResultChunk nextBytes(int chunkSize) throws IOException {
+        byte[] buf = new byte[chunkSize];
+        int length = 0;
+        if (lookahead >= 0) {
+            buf[length++] = (byte)lookahead;
+            lookahead = -1;
+        }
+        while (length < chunkSize) {
+            int read = in.read(buf, length, chunkSize - length);
+            if (read < 0) {
+                return ResultChunk.bytes(id, trim(buf, length), true);
+            }
+            length += read;
+        }
+        lookahead = in.read();
+        return ResultChunk.bytes(id, buf, lookahead < 0);
+    }
+
+    private ResultChunk nextElements(int chunkElements) {
+        if (!iterator.hasNext()) {
+            return ResultChunk.elements(id, NO_ELEMENTS, true);
+        }
+        Object[] elements = new Object[chunkElements];
+        int size = 0;
+        while (size < chunkElements && iterator.hasNext()) {
+            elements[size++] = iterator.next();
+        }
+        if (size < chunkElements) {
+            Object[] trimmed = new Object[size];
+            System.arraycopy(elements, 0, trimmed, 0, size);
+            elements = trimmed;
+        }
+        return ResultChunk.elements(id, elements, !iterator.hasNext());
+    }
+
+    private static byte[] trim(byte[] buf, int length) {
+        if (length == buf.length) {
+            return buf;
+        }
+        byte[] trimmed = new byte[length];
+        System.arraycopy(buf, 0, trimmed, 0, length);
+        return trimmed;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.mbean;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.jboss.as.remote.jmx.common.IdleTimeoutWheel;
+import org.jboss.as.remote.jmx.common.ResultChunk;
+import org.jboss.as.remote.jmx.common.SessionIdGenerator;
+import org.jboss.as.remote.jmx.common.SessionRegistry;
+import org.jboss.logging.Logger;
+
+/**
+ * Holds large results in cursors so that they can be sent to the client a chunk at a time rather than
+ * in one response. Results are streamed if the method is declared to return an {@link InputStream} or an
+ * {@link Iterator}, or if it is declared to return a {@code byte[]}, {@link Collection}, {@link List},
+ * {@link Set} or {@link Iterable} which is too big to fit in one chunk.
+ * Cursors are removed once the last chunk has been read, when closed by the client, or when idle for too long.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+final class ResultCursors {
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    static final int DEFAULT_CHUNK_ELEMENTS = 1000;
+    static final long DEFAULT_MAX_IDLE_TIME = 5 * 60 * 1000;
+
+    private final Logger log = Logger.getLogger(ResultCursors.class);
+
+    private final SessionRegistry<ResultCursor> cursors = new SessionRegistry<ResultCursor>();
+    private final SessionIdGenerator idGenerator;
+    private final IdleTimeoutWheel<ResultCursor> idleCursors;
+    private volatile int chunkSize = DEFAULT_CHUNK_SIZE;
+    private volatile int chunkElements = DEFAULT_CHUNK_ELEMENTS;
+    private volatile long maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+
+    ResultCursors(SessionIdGenerator idGenerator, long tickMillis, int wheelSize) {
+        this.idGenerator = idGenerator;
+        this.idleCursors = new IdleTimeoutWheel<ResultCursor>(tickMillis, wheelSize, new IdleCursorListener(), System.currentTimeMillis());
+    }
+
+    /**
+     * Replaces a large result with its first chunk, holding on to the rest in a cursor
+     *
+     * @param type the declared return type of the invoked method
+     * @param value the returned value
+     * @return the value, or the first chunk if it is streamed
+     */
+    Object wrap(Class<?> type, Object value) throws IOException {
+        if (value == null) {
+            return null;
+        }
+        if (type == InputStream.class) {
+            return first(new ResultCursor(idGenerator.nextId(), (InputStream)value));
+        }
+        if (type == Iterator.class) {
+            return first(new ResultCursor(idGenerator.nextId(), (Iterator<?>)value));
+        }
+        if (type == byte[].class && ((byte[])value).length > chunkSize) {
+            return first(new ResultCursor(idGenerator.nextId(), new ByteArrayInputStream((byte[])value)));
+        }
+        if ((type == Collection.class || type == List.class || type == Set.class || type == Iterable.class)
+                && value instanceof Collection && ((Collection<?>)value).size() > chunkElements) {
+            return first(new ResultCursor(idGenerator.nextId(), ((Collection<?>)value).iterator()));
+        }
+        return value;
+    }
+
+    /**
+     * Reads the next chunk from a cursor
+     *
+     * @param id the cursor id
+     * @return the chunk
+     */
+    ResultChunk next(long id) throws IOException {
+        ResultCursor cursor = cursors.get(id);
+        if (cursor == null) {
+            throw new IllegalStateException("No result cursor found for " + id + ", it has been read to the end, closed or has expired");
+        }
+        boolean done = true;
+        try {
+            ResultChunk chunk = cursor.next(chunkSize, chunkElements);
+            done = chunk.isLast();
+            return chunk;
+        } finally {
+            if (done) {
+                remove(cursor);
+            }
+        }
+    }
+
+    void close(long id) {
+        ResultCursor cursor = cursors.get(id);
+        if (cursor != null) {
+            remove(cursor);
+        }
+    }
+
+    int expire(long now) {
+        return idleCursors.expire(now);
+    }
+
+    int size() {
+        return cursors.size();
+    }
+
+    void clear() {
+        idleCursors.clear();
+        cursors.clear();
+    }
+
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    int getChunkElements() {
+        return chunkElements;
+    }
+
+    void setChunkElements(int chunkElements) {
+        if (chunkElements <= 0) {
+            throw new IllegalArgumentException("Chunk elements must be positive");
+        }
+        this.chunkElements = chunkElements;
+    }
+
+    long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    void setMaxIdleTime(long maxIdleTime) {
+        if (maxIdleTime <= 0) {
+            throw new IllegalArgumentException("Max idle time must be positive");
+        }
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    private ResultChunk first(ResultCursor cursor) throws IOException {
+        ResultChunk chunk;
+        try {
+            chunk = cursor.next(chunkSize, chunkElements);
+        } catch (IOException e) {
+            cursor.close();
+            throw e;
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+        if (chunk.isLast()) {
+            //It all fitted in one chunk, so there is nothing to hold on to
+            cursor.close();
+        } else {
+            cursors.put(cursor.getId(), cursor);
+            idleCursors.add(cursor, cursor.getLastAccessTime() + maxIdleTime);
+        }
+        return chunk;
+    }
+
+    private void remove(ResultCursor cursor) {
+        if (cursors.remove(cursor.getId(), cursor)) {
+            cursor.close();
+        }
+    }
+
+    private class IdleCursorListener implements IdleTimeoutWheel.Listener<ResultCursor> {
+        public long getDeadline(ResultCursor cursor) {
+            if (cursors.get(cursor.getId()) != cursor) {
+                //Already removed
+                return -1;
+            }
+            return cursor.getLastAccessTime() + maxIdleTime;
+        }
+
+        public void expired(ResultCursor cursor) {
+            if (cursors.remove(cursor.getId(), cursor)) {
+                cursor.close();
+                log.debug("Removed result cursor " + cursor.getId() + " after being idle");
+            }
+        }
+    }
+}
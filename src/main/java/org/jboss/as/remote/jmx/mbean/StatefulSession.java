@@ -0,0 +1,183 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.as.remote.jmx.mbean;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * A stateful session bean instance held on behalf of a remote client. A serializable instance may be passivated
+ * to a {@link PassivationStore} while it is idle, and is activated again when next acquired
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+final class StatefulSession {
+    private final long id;
+    private final String name;
+    private final long owner;
+    private final boolean serializable;
+    private final ClassLoader classLoader;
+    private Object instance;
+    private PassivationStore.Slot slot;
+    private int calls;
+    private boolean expired;
+    private boolean handle;
+    private volatile long lastAccessTime;
+
+    StatefulSession(long id, String name, long owner, Object instance) {
+        this.id = id;
+        this.name = name;
+        this.owner = owner;
+        this.instance = instance;
+        this.serializable = instance instanceof Serializable;
+        this.classLoader = instance.getClass().getClassLoader();
+        this.lastAccessTime = System.currentTimeMillis();
+    }
+
+    long getId() {
+        return id;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the id of the client which looked the session up
+     *
+     * @return the client id, or {@code 0} if it is not known
+     */
+    long getOwner() {
+        return owner;
+    }
+
+    /**
+     * Gets the instance for an invocation, activating it if it was passivated. It will not be passivated again
+     * until {@link #release()} is called
+     *
+     * @param store the store the instance was passivated to
+     * @return the instance, or {@code null} if the session has expired
+     */
+    synchronized Object acquire(PassivationStore store) throws IOException, ClassNotFoundException {
+        if (expired) {
+            return null;
+        }
+        if (instance == null) {
+            instance = store.read(slot, classLoader);
+            store.free(slot);
+            slot = null;
+        }
+        calls++;
+        return instance;
+    }
+
+    /**
+     * Called once an invocation using the instance returned by {@link #acquire(PassivationStore)} is done
+     */
+    void release() {
+        synchronized (this) {
+            calls--;
+        }
+        touch();
+    }
+
+    /**
+     * Marks the session as expired after being idle, unless it is being invoked upon. Once expired it can no
+     * longer be acquired
+     *
+     * @return {@code true} if the session expired, {@code false} if there are invocations in progress
+     */
+    synchronized boolean expire() {
+        if (calls > 0) {
+            return false;
+        }
+        expired = true;
+        return true;
+    }
+
+    /**
+     * Writes the instance to the store and lets go of it, unless it is being invoked upon. An instance which
+     * serializes to fewer than {@code minSize} bytes is a handle to state held elsewhere, such as the EJB container's
+     * proxy for a bean, and letting go of it would free next to nothing while costing a deserialization on the next
+     * invocation. Such an instance is kept on the heap and never passivated
+     *
+     * @param store the store
+     * @param minSize the minimum serialized size in bytes of an instance worth passivating
+     * @return {@code true} if the instance was passivated
+     * @throws IOException if the instance could not be serialized
+     */
+    synchronized boolean passivate(PassivationStore store, int minSize) throws IOException {
+        if (instance == null || calls > 0 || handle) {
+            return false;
+        }
+        byte[] data = PassivationStore.serialize(instance);
+        if (data.length < minSize) {
+            handle = true;
+            return false;
+        }
+        PassivationStore.Slot slot = store.writeSerialized(data);
+        if (slot == null) {
+            return false;
+        }
+        this.slot = slot;
+        instance = null;
+        return true;
+    }
+
+    /**
+     * Frees the passivated instance, if any, once the session has been removed
+     *
+     * @param store the store
+     */
+    synchronized void discard(PassivationStore store) {
+        if (slot != null) {
+            store.free(slot);
+            slot = null;
+        }
+    }
+
+    synchronized boolean isPassivated() {
+        return instance == null;
+    }
+
+    boolean isSerializable() {
+        return serializable;
+    }
+
+    /**
+     * Whether the instance may be passivated, which is not the case once it turned out to be a handle
+     *
+     * @return {@code true} if it is worth trying to passivate the instance
+     */
+    synchronized boolean isPassivatable() {
+        return serializable && !handle;
+    }
+
+    long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    void touch() {
+        lastAccessTime = System.currentTimeMillis();
+    }
+}
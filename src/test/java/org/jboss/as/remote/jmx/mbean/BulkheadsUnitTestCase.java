@@ -0,0 +1,127 @@
+/*
+* JBoss, Home of Professional Open Source.
+* Copyright 2006, Red Hat Middleware LLC, and individual contributors
+* as indicated by the @author tags. See the copyright.txt file in the
+* distribution for a full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.as.remote.jmx.mbean;
+
+import java.util.concurrent.Semaphore;
+
+import junit.framework.Assert;
+
+import org.jboss.as.remote.jmx.common.BeanBusyException;
+import org.junit.Test;
+
+/**
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class BulkheadsUnitTestCase {
+
+    @Test
+    public void testUnlimited() throws Exception {
+        Bulkheads bulkheads = new Bulkheads();
+        Assert.assertNull(bulkheads.acquire("a"));
+        bulkheads.setLimits("b=1");
+        Assert.assertNull(bulkheads.acquire("a"));
+        Assert.assertNotNull(bulkheads.acquire("b"));
+    }
+
+    @Test
+    public void testAcquireAndReject() throws Exception {
+        Bulkheads bulkheads = new Bulkheads();
+        bulkheads.setMaxWaitTime(0);
+        bulkheads.setLimits("a=2");
+        Semaphore first = bulkheads.acquire("a");
+        Semaphore second = bulkheads.acquire("a");
+        assertBusy(bulkheads, "a");
+        Assert.assertEquals(1, bulkheads.getRejectionCount());
+        first.release();
+        Semaphore third = bulkheads.acquire("a");
+        Assert.assertSame(first, third);
+        second.release();
+        third.release();
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        Bulkheads bulkheads = new Bulkheads();
+        bulkheads.setMaxWaitTime(200);
+        bulkheads.setDefaultLimit(1);
+        final Semaphore permit = bulkheads.acquire("a");
+        long start = System.currentTimeMillis();
+        assertBusy(bulkheads, "a");
+        Assert.assertTrue(System.currentTimeMillis() - start >= 150);
+
+        //Released while waiting
+        Thread releaser = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignore) {
+                }
+                permit.release();
+            }
+        });
+        releaser.start();
+        Assert.assertSame(permit, bulkheads.acquire("a"));
+        releaser.join();
+    }
+
+    @Test
+    public void testResizeWithInvocationsInProgress() throws Exception {
+        Bulkheads bulkheads = new Bulkheads();
+        bulkheads.setMaxWaitTime(0);
+        bulkheads.setLimits("a=2");
+        Semaphore first = bulkheads.acquire("a");
+        Semaphore second = bulkheads.acquire("a");
+
+        //The invocations in progress still count against the smaller limit
+        bulkheads.setLimits("a=1");
+        first.release();
+        assertBusy(bulkheads, "a");
+        second.release();
+        Semaphore third = bulkheads.acquire("a");
+        Assert.assertSame(first, third);
+        assertBusy(bulkheads, "a");
+
+        //And against the bigger one
+        bulkheads.setLimits("a=3");
+        Semaphore fourth = bulkheads.acquire("a");
+        Semaphore fifth = bulkheads.acquire("a");
+        assertBusy(bulkheads, "a");
+        third.release();
+        fourth.release();
+        fifth.release();
+
+        //No longer limited
+        bulkheads.setLimits("");
+        Assert.assertNull(bulkheads.acquire("a"));
+    }
+
+    private void assertBusy(Bulkheads bulkheads, String name) {
+        try {
+            bulkheads.acquire(name);
+            Assert.fail("Should have been rejected");
+        } catch (BeanBusyException expected) {
+            Assert.assertEquals(name, expected.getName());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+* JBoss, Home of Professional Open Source.
+* Copyright 2006, Red Hat Middleware LLC, and individual contributors
+* as indicated by the @author tags. See the copyright.txt file in the
+* distribution for a full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.as.remote.jmx.mbean;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class StatefulSessionUnitTestCase {
+
+    @Test
+    public void testPassivateAndActivate() throws Exception {
+        PassivationStore store = PassivationStore.create(null, 64 * 1024);
+        try {
+            byte[] state = new byte[4096];
+            Arrays.fill(state, (byte)3);
+            StatefulSession session = new StatefulSession(1, "test", 0, state);
+            Assert.assertTrue(session.passivate(store, 1024));
+            Assert.assertTrue(session.isPassivated());
+            Assert.assertEquals(1, store.size());
+
+            Assert.assertTrue(Arrays.equals(state, (byte[])session.acquire(store)));
+            Assert.assertFalse(session.isPassivated());
+            Assert.assertEquals(0, store.size());
+            //In use
+            Assert.assertFalse(session.passivate(store, 1024));
+            session.release();
+            Assert.assertTrue(session.passivate(store, 1024));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testHandleIsNotPassivated() throws Exception {
+        PassivationStore store = PassivationStore.create(null, 64 * 1024);
+        try {
+            StatefulSession session = new StatefulSession(1, "test", 0, "handle");
+            Assert.assertTrue(session.isPassivatable());
+            Assert.assertFalse(session.passivate(store, 1024));
+            Assert.assertFalse(session.isPassivatable());
+            Assert.assertFalse(session.isPassivated());
+            Assert.assertEquals(0, store.size());
+        } finally {
+            store.close();
+        }
+    }
+}
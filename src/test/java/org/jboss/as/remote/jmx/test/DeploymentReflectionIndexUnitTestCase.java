@@ -0,0 +1,89 @@
+/*
+* JBoss, Home of Professional Open Source.
+* Copyright 2006, Red Hat Middleware LLC, and individual contributors
+* as indicated by the @author tags. See the copyright.txt file in the
+* distribution for a full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.as.remote.jmx.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.Assert;
+
+import org.jboss.as.remote.jmx.common.DeploymentReflectionIndex;
+import org.junit.Test;
+
+/**
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class DeploymentReflectionIndexUnitTestCase {
+
+    @Test
+    public void testIndexIsCached() {
+        DeploymentReflectionIndex index = DeploymentReflectionIndex.create();
+        Object first = index.getClassIndex(DeploymentReflectionIndexUnitTestCase.class);
+        Assert.assertSame(first, index.getClassIndex(DeploymentReflectionIndexUnitTestCase.class));
+        Assert.assertNotSame(first, index.getClassIndex(MethodUtilUnitTestCase.class));
+    }
+
+    @Test
+    public void testRemoveClassLoader() {
+        DeploymentReflectionIndex index = DeploymentReflectionIndex.create();
+        Object test = index.getClassIndex(DeploymentReflectionIndexUnitTestCase.class);
+
+        //Nothing is indexed for the bootstrap class loader
+        index.removeClassLoader(null);
+        Assert.assertSame(test, index.getClassIndex(DeploymentReflectionIndexUnitTestCase.class));
+
+        index.removeClassLoader(DeploymentReflectionIndexUnitTestCase.class.getClassLoader());
+        Assert.assertNotSame(test, index.getClassIndex(DeploymentReflectionIndexUnitTestCase.class));
+
+        test = index.getClassIndex(DeploymentReflectionIndexUnitTestCase.class);
+        index.clear();
+        Assert.assertNotSame(test, index.getClassIndex(DeploymentReflectionIndexUnitTestCase.class));
+    }
+
+    @Test
+    public void testConcurrentGetBuildsOnce() throws Exception {
+        final DeploymentReflectionIndex index = DeploymentReflectionIndex.create();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int i = 0 ; i < 100 ; i++) {
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return index.getClassIndex(MethodUtilUnitTestCase.class);
+                    }
+                }));
+            }
+            Object first = futures.get(0).get();
+            for (Future<Object> future : futures) {
+                Assert.assertSame(first, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -22,11 +22,14 @@
 package org.jboss.as.remote.jmx.test;
 
 import java.io.File;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -38,16 +41,34 @@ import javax.jms.QueueReceiver;
 import javax.jms.QueueSender;
 import javax.jms.QueueSession;
 import javax.jms.TextMessage;
+import javax.management.MBeanServerConnection;
+import javax.management.Notification;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
 
 import junit.framework.Assert;
 
 import org.jboss.arquillian.container.test.api.Deployment;
 import org.jboss.arquillian.container.test.api.RunAsClient;
 import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.as.remote.jmx.client.AsyncInvoker;
+import org.jboss.as.remote.jmx.client.BatchResults;
 import org.jboss.as.remote.jmx.client.Client;
 import org.jboss.as.remote.jmx.client.ClientFactory;
+import org.jboss.as.remote.jmx.client.ClusterClient;
+import org.jboss.as.remote.jmx.client.ClusterNode;
+import org.jboss.as.remote.jmx.client.ConnectionListener;
+import org.jboss.as.remote.jmx.client.InvocationBatch;
+import org.jboss.as.remote.jmx.client.InvocationFuture;
+import org.jboss.as.remote.jmx.client.LoadBalancePolicies;
+import org.jboss.as.remote.jmx.common.Invocation;
+import org.jboss.as.remote.jmx.common.InvocationResult;
 import org.jboss.as.remote.jmx.common.MethodUtil;
+import org.jboss.as.remote.jmx.common.ServerNotifications;
+import org.jboss.as.remote.jmx.common.StaleIdException;
 import org.jboss.as.remote.jmx.mbean.RemoteViaJMX;
 import org.jboss.as.remote.jmx.test.ejb.TestStateful;
 import org.jboss.as.remote.jmx.test.ejb.TestStateless;
@@ -137,6 +158,197 @@ public class EjbInEarTestCase {
         }
     }
 
+    @Test
+    public void testSharedClient() throws Exception {
+        ObjectName name = new ObjectName("jboss:name=test,type=remote");
+        Client client = ClientFactory.INSTANCE.getOrCreateClient(name, "localhost", 1090);
+        try {
+            Client other = ClientFactory.INSTANCE.getOrCreateClient(name, null, 0);
+            Assert.assertSame(client, other);
+            Assert.assertSame(client, ClientFactory.INSTANCE.getClient(name, "localhost", 1090));
+            other.remove();
+            other.remove();
+            //Still in use by us
+            TestStateless bean = client.lookup(TestStateless.class, "java:global/test/test-ejb/TestStatelessBean");
+            Assert.assertEquals(1, bean.test(true));
+            //A different server, even if it has an MBean with the same name
+            Client remote = ClientFactory.INSTANCE.getOrCreateClient(name, "127.0.0.1", 1090);
+            Assert.assertNotSame(client, remote);
+            remote.remove();
+            Assert.assertNull(ClientFactory.INSTANCE.getClient(name, "127.0.0.1", 1090));
+        } finally {
+            client.remove();
+        }
+        Assert.assertNull(ClientFactory.INSTANCE.getClient(name, "localhost", 1090));
+    }
+
+    @Test
+    public void testHeartbeat() throws Exception {
+        ObjectName name = new ObjectName("jboss:name=test,type=remote");
+        Client client = ClientFactory.INSTANCE.getOrCreateClient(name, "localhost", 1090);
+        JMXConnector connector = JMXConnectorFactory.connect(new JMXServiceURL("service:jmx:rmi:///jndi/rmi://localhost:1090/jmxrmi"));
+        try {
+            final AtomicInteger events = new AtomicInteger();
+            final CountDownLatch lost = new CountDownLatch(1);
+            final CountDownLatch restored = new CountDownLatch(1);
+            final CountDownLatch restarted = new CountDownLatch(1);
+            client.addConnectionListener(new ConnectionListener() {
+                public void connectionLost(Client client, Exception cause) {
+                    events.incrementAndGet();
+                    lost.countDown();
+                }
+
+                public void connectionRestored(Client client) {
+                    events.incrementAndGet();
+                    restored.countDown();
+                }
+
+                public void serverRestarted(Client client) {
+                    events.incrementAndGet();
+                    restarted.countDown();
+                }
+            });
+            TestStateless bean = client.lookup(TestStateless.class, "java:global/test/test-ejb/TestStatelessBean");
+            //The client may be shared with other tests, and already have a running heartbeat which gets rescheduled
+            client.setHeartbeatInterval(200);
+            Assert.assertEquals(1, bean.test(true));
+            Thread.sleep(1000);
+            Assert.assertTrue(client.isConnected());
+            Assert.assertEquals(0, events.get());
+            Assert.assertEquals(1, bean.test(true));
+
+            //A stopped MBean cannot be used, which the heartbeat reports as a lost connection
+            MBeanServerConnection connection = connector.getMBeanServerConnection();
+            connection.invoke(name, "stop", new Object[0], new String[0]);
+            Assert.assertTrue(lost.await(10, TimeUnit.SECONDS));
+            Assert.assertFalse(client.isConnected());
+            connection.invoke(name, "start", new Object[0], new String[0]);
+            Assert.assertTrue(restored.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(restarted.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(client.isConnected());
+            Assert.assertEquals(1, bean.test(true));
+        } finally {
+            client.setHeartbeatInterval(10000);
+            connector.close();
+            client.remove();
+        }
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+        ObjectName name = new ObjectName("jboss:name=test,type=remote");
+        String jndiName = "java:global/test/test-ejb/TestStatelessBean";
+        Client client = ClientFactory.INSTANCE.getOrCreateClient(name, "localhost", 1090);
+        JMXConnector connector = JMXConnectorFactory.connect(new JMXServiceURL("service:jmx:rmi:///jndi/rmi://localhost:1090/jmxrmi"));
+        try {
+            MBeanServerConnection connection = connector.getMBeanServerConnection();
+            TestStateless bean = client.lookup(TestStateless.class, jndiName);
+            TestStateful stateful = client.lookup(TestStateful.class, "java:global/test/test-ejb/TestStatefulBean");
+            Assert.assertEquals(1, bean.test(true));
+            stateful.setValue(100);
+            final CountDownLatch restarted = new CountDownLatch(1);
+            client.addConnectionListener(new ConnectionListener() {
+                public void connectionLost(Client client, Exception cause) {
+                }
+
+                public void connectionRestored(Client client) {
+                }
+
+                public void serverRestarted(Client client) {
+                    restarted.countDown();
+                }
+            });
+
+            long before = (Long)connection.getAttribute(name, "InstanceId");
+            connection.invoke(name, "stop", new Object[0], new String[0]);
+            connection.invoke(name, "start", new Object[0], new String[0]);
+            Assert.assertTrue(before != ((Long)connection.getAttribute(name, "InstanceId")).longValue());
+
+            //Ids handed out before the restart are rejected rather than trusted
+            String[] sig = new String[] {Boolean.TYPE.getName()};
+            Invocation stale = Invocation.create(jndiName, -1, before, Invocation.NO_SESSION, 0, MethodUtil.getSignatureHash(Integer.TYPE.getName(), "test", sig),
+                    Integer.TYPE.getName(), "test", sig, new Object[] {true});
+            InvocationResult[] results = (InvocationResult[])connection.invoke(name, "invokeBatch", new Object[] {new Invocation[] {stale}}, new String[] {Invocation[].class.getName()});
+            Assert.assertTrue(results[0].getFailure() instanceof StaleIdException);
+
+            //The proxies from before the restart resend by name and signature
+            Assert.assertEquals(1, bean.test(true));
+            //The rejected ids make the client check for a restart straight away rather than at the next heartbeat
+            Assert.assertTrue(restarted.await(2, TimeUnit.SECONDS));
+            Assert.assertEquals(0, bean.test(false));
+            try {
+                stateful.getValue();
+                Assert.fail("Stateful sessions should not survive a restart");
+            } catch (Exception expected) {
+            }
+        } finally {
+            connector.close();
+            client.remove();
+        }
+    }
+
+    @Test
+    public void testCluster() throws Exception {
+        ObjectName name = new ObjectName("jboss:name=test,type=remote");
+        //Two endpoints for the same server are enough to check the routing
+        ClusterClient cluster = ClientFactory.INSTANCE.createClusterClient(name, new String[] {"localhost:1090", "127.0.0.1:1090"}, LoadBalancePolicies.roundRobin());
+        try {
+            TestStateless bean = cluster.lookup(TestStateless.class, "java:global/test/test-ejb/TestStatelessBean");
+            for (int i = 0 ; i < 10 ; i++) {
+                Assert.assertEquals(1, bean.test(true));
+            }
+            ClusterNode[] nodes = cluster.getNodes();
+            Assert.assertEquals(2, nodes.length);
+            for (ClusterNode node : nodes) {
+                Assert.assertTrue(node.isHealthy());
+                Assert.assertEquals(0, node.getOutstandingRequests());
+                Assert.assertTrue(node.getLatencyEwma() > 0);
+            }
+
+            //Stateful session beans stay where they were created
+            TestStateful stateful = cluster.lookup(TestStateful.class, "java:global/test/test-ejb/TestStatefulBean");
+            stateful.setValue(100);
+            Assert.assertEquals(100, stateful.getValue());
+        } finally {
+            cluster.remove();
+        }
+        Assert.assertNull(ClientFactory.INSTANCE.getClient(name, "127.0.0.1", 1090));
+    }
+
+    @Test
+    public void testConcurrentCallers() throws Exception {
+        Client client = ClientFactory.INSTANCE.getOrCreateClient(new ObjectName("jboss:name=test,type=remote"), "localhost", 1090);
+        try {
+            client.setMaxConnections(3);
+            final TestStateless bean = client.lookup(TestStateless.class, "java:global/test/test-ejb/TestStatelessBean");
+            final CountDownLatch done = new CountDownLatch(20);
+            final AtomicInteger failures = new AtomicInteger();
+            for (int i = 0 ; i < 20 ; i++) {
+                new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            for (int j = 0 ; j < 50 ; j++) {
+                                if (bean.test(true) != 1) {
+                                    failures.incrementAndGet();
+                                }
+                            }
+                        } catch (Throwable t) {
+                            failures.incrementAndGet();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }).start();
+            }
+            Assert.assertTrue(done.await(60, TimeUnit.SECONDS));
+            Assert.assertEquals(0, failures.get());
+            Assert.assertTrue(client.getConnectionCount() >= 1);
+            Assert.assertTrue(client.getConnectionCount() <= 3);
+        } finally {
+            client.remove();
+        }
+    }
+
     @Test
     public void testSimpleStateful() throws Exception {
         Client client = ClientFactory.INSTANCE.getOrCreateClient(new ObjectName("jboss:name=test,type=remote"), "localhost", 1090);
@@ -166,6 +378,206 @@ public class EjbInEarTestCase {
         }
     }
 
+    @Test
+    public void testBatch() throws Exception {
+        Client client = ClientFactory.INSTANCE.getOrCreateClient(new ObjectName("jboss:name=test,type=remote"), "localhost", 1090);
+        try {
+            TestStateless stateless = client.lookup(TestStateless.class, "java:global/test/test-ejb/TestStatelessBean");
+            TestStateful stateful = client.lookup(TestStateful.class, "java:global/test/test-ejb/TestStatefulBean");
+
+            InvocationBatch batch = client.createBatch();
+            int first = batch.add(stateless, "test", new Class[] {Boolean.TYPE}, true);
+            int second = batch.add(stateless, "test", new Class[] {Boolean.TYPE}, false);
+            batch.add(stateful, "setValue", new Class[] {Integer.TYPE}, 100);
+            int value = batch.add(stateful, "getValue", new Class[0]);
+            batch.add(stateful, "clear", new Class[0]);
+            int removed = batch.add(stateful, "getValue", new Class[0]);
+
+            BatchResults results = batch.execute();
+            Assert.assertEquals(6, results.size());
+            Assert.assertEquals(1, results.get(first));
+            Assert.assertEquals(0, results.get(second));
+            Assert.assertEquals(100, results.get(value));
+            Assert.assertTrue(results.isFailure(removed));
+        } finally {
+            client.remove();
+        }
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        Client client = ClientFactory.INSTANCE.getOrCreateClient(new ObjectName("jboss:name=test,type=remote"), "localhost", 1090);
+        try {
+            AsyncInvoker<TestStateless> invoker = client.lookupAsync(TestStateless.class, "java:global/test/test-ejb/TestStatelessBean");
+            List<InvocationFuture<Integer>> futures = new ArrayList<InvocationFuture<Integer>>();
+            for (int i = 0 ; i < 100 ; i++) {
+                InvocationFuture<Integer> future = invoker.invoke("test", new Class[] {Boolean.TYPE}, i % 2 == 0);
+                futures.add(future);
+            }
+            for (int i = 0 ; i < 100 ; i++) {
+                Assert.assertEquals(i % 2 == 0 ? 1 : 0, futures.get(i).get(10, TimeUnit.SECONDS).intValue());
+            }
+        } finally {
+            client.remove();
+        }
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        Client client = ClientFactory.INSTANCE.getOrCreateClient(new ObjectName("jboss:name=test,type=remote"), "localhost", 1090);
+        try {
+            TestStateless bean = client.lookup(TestStateless.class, "java:global/test/test-ejb/TestStatelessBean");
+
+            //Bigger than the configured chunk sizes, so these are sent in several chunks
+            byte[] bytes = bean.bytes(10000);
+            Assert.assertEquals(10000, bytes.length);
+            for (int i = 0 ; i < bytes.length ; i++) {
+                Assert.assertEquals((byte)i, bytes[i]);
+            }
+
+            InputStream in = bean.stream(10000);
+            try {
+                for (int i = 0 ; i < 10000 ; i++) {
+                    Assert.assertEquals(i & 0xff, in.read());
+                }
+                Assert.assertEquals(-1, in.read());
+            } finally {
+                in.close();
+            }
+
+            Iterator<Integer> it = bean.iterator(1000);
+            for (int i = 0 ; i < 1000 ; i++) {
+                Assert.assertTrue(it.hasNext());
+                Assert.assertEquals(i, it.next().intValue());
+            }
+            Assert.assertFalse(it.hasNext());
+
+            List<Integer> list = bean.list(1000);
+            Assert.assertEquals(1000, list.size());
+            Assert.assertEquals(999, list.get(999).intValue());
+
+            //Small enough to fit in one chunk
+            Assert.assertEquals(10, bean.bytes(10).length);
+            Assert.assertEquals(10, bean.list(10).size());
+
+            //Abandon a stream half way through
+            in = bean.stream(10000);
+            Assert.assertEquals(0, in.read());
+            in.close();
+        } finally {
+            client.remove();
+        }
+    }
+
+    @Test
+    public void testResultCache() throws Exception {
+        ObjectName name = new ObjectName("jboss:name=test,type=remote");
+        Client client = ClientFactory.INSTANCE.getOrCreateClient(name, "localhost", 1090);
+        JMXConnector connector = JMXConnectorFactory.connect(new JMXServiceURL("service:jmx:rmi:///jndi/rmi://localhost:1090/jmxrmi"));
+        try {
+            MBeanServerConnection connection = connector.getMBeanServerConnection();
+            connection.invoke(name, "clearResultCache", new Object[0], new String[0]);
+            long hits = (Long)connection.getAttribute(name, "ResultCacheHitCount");
+            long misses = (Long)connection.getAttribute(name, "ResultCacheMissCount");
+
+            TestStateless bean = client.lookup(TestStateless.class, "java:global/test/test-ejb/TestStatelessBean");
+            Assert.assertEquals(5, bean.list(5).size());
+            Assert.assertEquals(5, bean.list(5).size());
+            Assert.assertEquals(6, bean.list(6).size());
+            //Not cacheable
+            Assert.assertEquals(1, bean.test(true));
+
+            Assert.assertEquals(hits + 1, ((Long)connection.getAttribute(name, "ResultCacheHitCount")).longValue());
+            Assert.assertEquals(misses + 2, ((Long)connection.getAttribute(name, "ResultCacheMissCount")).longValue());
+        } finally {
+            connector.close();
+            client.remove();
+        }
+    }
+
+    @Test
+    public void testAddAndRemoveNames() throws Exception {
+        ObjectName name = new ObjectName("jboss:name=test,type=remote");
+        String jndiName = "java:global/test/test-ejb/TestStatelessBean";
+        Client client = ClientFactory.INSTANCE.getOrCreateClient(name, "localhost", 1090);
+        JMXConnector connector = JMXConnectorFactory.connect(new JMXServiceURL("service:jmx:rmi:///jndi/rmi://localhost:1090/jmxrmi"));
+        try {
+            MBeanServerConnection connection = connector.getMBeanServerConnection();
+            TestStateless bean = client.lookup(TestStateless.class, jndiName);
+            Assert.assertEquals(1, bean.test(true));
+
+            Assert.assertTrue((Boolean)connection.invoke(name, "removeName", new Object[] {jndiName}, new String[] {String.class.getName()}));
+            try {
+                client.lookup(TestStateless.class, jndiName);
+                Assert.fail("Should not have been able to look up removed name");
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                bean.test(true);
+                Assert.fail("Should not have been able to invoke removed name");
+            } catch (Exception expected) {
+            }
+
+            connection.invoke(name, "addName", new Object[] {"stateless", jndiName, TestStateless.class.getName()},
+                    new String[] {String.class.getName(), String.class.getName(), String.class.getName()});
+            bean = client.lookup(TestStateless.class, jndiName);
+            Assert.assertEquals(1, bean.test(true));
+        } finally {
+            connector.close();
+            client.remove();
+        }
+    }
+
+    @Test
+    public void testNotifications() throws Exception {
+        ObjectName name = new ObjectName("jboss:name=test,type=remote");
+        String jndiName = "java:global/test/test-ejb/TestStatelessBean";
+        Client client = ClientFactory.INSTANCE.getOrCreateClient(name, "localhost", 1090);
+        JMXConnector connector = JMXConnectorFactory.connect(new JMXServiceURL("service:jmx:rmi:///jndi/rmi://localhost:1090/jmxrmi"));
+        try {
+            final CountDownLatch sessionsRemoved = new CountDownLatch(1);
+            final CountDownLatch namesChanged = new CountDownLatch(1);
+            client.addServerListener(new NotificationListener() {
+                public void handleNotification(Notification notification, Object handback) {
+                    if (ServerNotifications.SESSIONS_REMOVED.equals(notification.getType())) {
+                        sessionsRemoved.countDown();
+                    } else if (ServerNotifications.NAMES_CHANGED.equals(notification.getType())) {
+                        namesChanged.countDown();
+                    }
+                }
+            });
+
+            TestStateful stateful = client.lookup(TestStateful.class, "java:global/test/test-ejb/TestStatefulBean");
+            stateful.setValue(100);
+            TestStateful copy = client.lookup(TestStateful.class, "java:global/test/test-ejb/TestStatefulBean");
+            stateful.clear();
+            Assert.assertTrue(sessionsRemoved.await(10, TimeUnit.SECONDS));
+            MBeanServerConnection connection = connector.getMBeanServerConnection();
+            ObjectName statisticsName = new ObjectName(name.getCanonicalName() + ",service=statistics");
+            long invocations = (Long)connection.getAttribute(statisticsName, "InvocationCount");
+            try {
+                stateful.getValue();
+                Assert.fail("Should not have been able to read value of @Removed bean");
+            } catch (IllegalStateException expected) {
+                //The server would say there is no proxy, the client knows the session was removed without asking
+                Assert.assertTrue(expected.getMessage(), expected.getMessage().contains("was removed by the server"));
+            }
+            Assert.assertEquals(invocations, connection.getAttribute(statisticsName, "InvocationCount"));
+            copy.setValue(200);
+            Assert.assertEquals(200, copy.getValue());
+
+            TestStateless bean = client.lookup(TestStateless.class, jndiName);
+            connection.invoke(name, "addName", new Object[] {"stateless", jndiName, TestStateless.class.getName()},
+                    new String[] {String.class.getName(), String.class.getName(), String.class.getName()});
+            Assert.assertTrue(namesChanged.await(10, TimeUnit.SECONDS));
+            //The proxy from before the change sends the name rather than the ids it was given
+            Assert.assertEquals(1, bean.test(true));
+        } finally {
+            connector.close();
+            client.remove();
+        }
+    }
+
     @Test
     public void testJmsLookup() throws Exception {
         Client client = ClientFactory.INSTANCE.getOrCreateClient(new ObjectName("jboss:name=test,type=remote"), "localhost", 1090);
@@ -0,0 +1,128 @@
+/*
+* JBoss, Home of Professional Open Source.
+* Copyright 2006, Red Hat Middleware LLC, and individual contributors
+* as indicated by the @author tags. See the copyright.txt file in the
+* distribution for a full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.as.remote.jmx.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.jboss.as.remote.jmx.common.IdleTimeoutWheel;
+import org.junit.Test;
+
+/**
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class IdleTimeoutWheelUnitTestCase {
+
+    private static final long MAX_IDLE = 100;
+
+    @Test
+    public void testExpireIdle() throws Exception {
+        Listener listener = new Listener();
+        IdleTimeoutWheel<Item> wheel = new IdleTimeoutWheel<Item>(10, 8, listener, 0);
+        Item a = new Item(0);
+        Item b = new Item(50);
+        wheel.add(a, a.lastAccess + MAX_IDLE);
+        wheel.add(b, b.lastAccess + MAX_IDLE);
+
+        Assert.assertEquals(0, wheel.expire(90));
+        Assert.assertEquals(1, wheel.expire(100));
+        Assert.assertEquals(1, listener.expired.size());
+        Assert.assertSame(a, listener.expired.get(0));
+
+        //Touching b moves its deadline
+        b.lastAccess = 120;
+        Assert.assertEquals(0, wheel.expire(160));
+        Assert.assertEquals(0, wheel.expire(210));
+        Assert.assertEquals(1, wheel.expire(230));
+        Assert.assertSame(b, listener.expired.get(1));
+    }
+
+    @Test
+    public void testRemovedItemsAreDropped() throws Exception {
+        Listener listener = new Listener();
+        IdleTimeoutWheel<Item> wheel = new IdleTimeoutWheel<Item>(10, 8, listener, 0);
+        Item a = new Item(0);
+        wheel.add(a, a.lastAccess + MAX_IDLE);
+        a.removed = true;
+        Assert.assertEquals(0, wheel.expire(1000));
+        Assert.assertEquals(0, listener.checked);
+        a.removed = false;
+        Assert.assertEquals(0, wheel.expire(5000));
+        Assert.assertTrue(listener.expired.isEmpty());
+    }
+
+    @Test
+    public void testDeadlineBeyondRevolution() throws Exception {
+        Listener listener = new Listener();
+        //The wheel only covers 80ms, so this item comes up several times before it expires
+        IdleTimeoutWheel<Item> wheel = new IdleTimeoutWheel<Item>(10, 8, listener, 0);
+        Item a = new Item(0);
+        a.maxIdle = 1000;
+        wheel.add(a, a.lastAccess + a.maxIdle);
+        for (long now = 10 ; now < 1000 ; now += 10) {
+            Assert.assertEquals(0, wheel.expire(now));
+        }
+        Assert.assertEquals(1, wheel.expire(1000));
+    }
+
+    @Test
+    public void testCatchUpAfterPause() throws Exception {
+        Listener listener = new Listener();
+        IdleTimeoutWheel<Item> wheel = new IdleTimeoutWheel<Item>(10, 8, listener, 0);
+        for (int i = 0 ; i < 100 ; i++) {
+            Item item = new Item(i * 3);
+            wheel.add(item, item.lastAccess + MAX_IDLE);
+        }
+        Assert.assertEquals(100, wheel.expire(100000));
+    }
+
+    private static class Item {
+        volatile long lastAccess;
+        volatile long maxIdle = MAX_IDLE;
+        volatile boolean removed;
+
+        Item(long lastAccess) {
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private static class Listener implements IdleTimeoutWheel.Listener<Item> {
+        final List<Item> expired = new ArrayList<Item>();
+        int checked;
+
+        public long getDeadline(Item item) {
+            if (item.removed) {
+                return -1;
+            }
+            checked++;
+            return item.lastAccess + item.maxIdle;
+        }
+
+        public void expired(Item item) {
+            expired.add(item);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+* JBoss, Home of Professional Open Source.
+* Copyright 2006, Red Hat Middleware LLC, and individual contributors
+* as indicated by the @author tags. See the copyright.txt file in the
+* distribution for a full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.as.remote.jmx.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+
+import junit.framework.Assert;
+
+import org.jboss.as.remote.jmx.common.Invocation;
+import org.jboss.as.remote.jmx.common.MethodUtil;
+import org.junit.Test;
+
+/**
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class InvocationUnitTestCase {
+
+    @Test
+    public void testMethodIdInvocation() throws Exception {
+        Object[] args = new Object[] {null, true, false, 0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, 5L, Long.MIN_VALUE,
+                1.5d, "hello", new byte[] {1, 2, 3}, (short)7, (byte)-3, 2.5f, 'x', new Date(1000)};
+        long hash = MethodUtil.getSignatureHash("int", "test", new String[] {"boolean"});
+        Invocation invocation = roundTrip(Invocation.create("java:global/Test", 3, -987654321L, 123456789L, 17, hash, "int", "test", new String[] {"boolean"}, args));
+        Assert.assertNull(invocation.getName());
+        Assert.assertEquals(3, invocation.getNameId());
+        Assert.assertTrue(invocation.hasIds());
+        Assert.assertEquals(-987654321L, invocation.getInstanceId());
+        Assert.assertTrue(invocation.isStateful());
+        Assert.assertEquals(123456789L, invocation.getSessionId());
+        Assert.assertEquals(17, invocation.getMethodId());
+        Assert.assertEquals(hash, invocation.getMethodHash());
+        //The signature is only kept for resending it without the ids
+        Assert.assertNull(invocation.getMethodName());
+        Assert.assertEquals(args.length, invocation.getArgs().length);
+        for (int i = 0 ; i < args.length ; i++) {
+            if (args[i] instanceof byte[]) {
+                Assert.assertTrue(Arrays.equals((byte[])args[i], (byte[])invocation.getArgs()[i]));
+            } else {
+                Assert.assertEquals(args[i], invocation.getArgs()[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testSignatureInvocation() throws Exception {
+        Invocation invocation = roundTrip(Invocation.create("java:global/Test", -1, 42L, Invocation.NO_SESSION, "int", "test", new String[] {"boolean"}, null));
+        Assert.assertEquals("java:global/Test", invocation.getName());
+        Assert.assertEquals(-1, invocation.getNameId());
+        Assert.assertFalse(invocation.hasIds());
+        //Without any ids the instance id is not sent
+        Assert.assertEquals(0, invocation.getInstanceId());
+        Assert.assertFalse(invocation.isStateful());
+        Assert.assertEquals(-1, invocation.getMethodId());
+        Assert.assertEquals("int", invocation.getReturnType());
+        Assert.assertEquals("test", invocation.getMethodName());
+        Assert.assertTrue(Arrays.equals(new String[] {"boolean"}, invocation.getSig()));
+        Assert.assertNull(invocation.getArgs());
+    }
+
+    @Test
+    public void testWithoutIds() throws Exception {
+        long hash = MethodUtil.getSignatureHash("int", "test", new String[] {"boolean"});
+        Invocation invocation = Invocation.create("java:global/Test", 3, 5L, 123456789L, 17, hash, "int", "test", new String[] {"boolean"}, new Object[] {true});
+        Invocation resend = roundTrip(invocation.withoutIds());
+        Assert.assertEquals("java:global/Test", resend.getName());
+        Assert.assertEquals(-1, resend.getNameId());
+        Assert.assertFalse(resend.hasIds());
+        Assert.assertEquals(123456789L, resend.getSessionId());
+        Assert.assertEquals(-1, resend.getMethodId());
+        Assert.assertEquals("int", resend.getReturnType());
+        Assert.assertEquals("test", resend.getMethodName());
+        Assert.assertTrue(Arrays.equals(new String[] {"boolean"}, resend.getSig()));
+        Assert.assertEquals(Boolean.TRUE, resend.getArgs()[0]);
+        try {
+            roundTrip(invocation).withoutIds();
+            Assert.fail("Should not be able to resend an invocation received without the signature");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testNameIdWithSignature() throws Exception {
+        //A name id is only valid within the MBean instance which handed it out, even if the method goes by signature
+        Invocation invocation = roundTrip(Invocation.create("java:global/Test", 7, 99L, Invocation.NO_SESSION, "int", "test", new String[] {"boolean"}, null));
+        Assert.assertNull(invocation.getName());
+        Assert.assertEquals(7, invocation.getNameId());
+        Assert.assertTrue(invocation.hasIds());
+        Assert.assertEquals(99L, invocation.getInstanceId());
+        Assert.assertEquals(-1, invocation.getMethodId());
+        Assert.assertEquals("test", invocation.getMethodName());
+    }
+
+    @Test
+    public void testLongString() throws Exception {
+        char[] chars = new char[100000];
+        Arrays.fill(chars, '\u20ac');
+        String s = new String(chars);
+        Invocation invocation = roundTrip(Invocation.create("x", 1, 1L, Invocation.NO_SESSION, 0, 0, "void", "x", new String[0], new Object[] {s}));
+        Assert.assertEquals(s, invocation.getArgs()[0]);
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        Assert.assertTrue(serialize(Invocation.create("java:global/test/test-ejb/TestStatelessBean", 0, 1L, Invocation.NO_SESSION, 0,
+                MethodUtil.getSignatureHash("int", "test", new String[] {"boolean"}), "int", "test", new String[] {"boolean"}, new Object[] {true})).length <
+                serialize(new Object[] {"java:global/test/test-ejb/TestStatelessBean", "int", "test", new String[] {"boolean"}, new Object[] {true}}).length / 2);
+    }
+
+    private Invocation roundTrip(Invocation invocation) throws Exception {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialize(invocation)));
+        return (Invocation)in.readObject();
+    }
+
+    private byte[] serialize(Object o) throws Exception {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bout);
+        out.writeObject(o);
+        out.close();
+        return bout.toByteArray();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+* JBoss, Home of Professional Open Source.
+* Copyright 2006, Red Hat Middleware LLC, and individual contributors
+* as indicated by the @author tags. See the copyright.txt file in the
+* distribution for a full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.as.remote.jmx.test;
+
+import junit.framework.Assert;
+
+import org.jboss.as.remote.jmx.common.LatencyHistogram;
+import org.junit.Test;
+
+/**
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class LatencyHistogramUnitTestCase {
+
+    @Test
+    public void testEmpty() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1 ; i <= 20 ; i++) {
+            histogram.record(i);
+        }
+        Assert.assertEquals(20, histogram.getCount());
+        Assert.assertEquals(210, histogram.getTotal());
+        Assert.assertEquals(10, histogram.getPercentile(50));
+        Assert.assertEquals(20, histogram.getPercentile(100));
+        Assert.assertEquals(20, histogram.getMax());
+    }
+
+    @Test
+    public void testPercentilesWithinPrecision() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1 ; i <= 100000 ; i++) {
+            histogram.record(i * 1000);
+        }
+        assertWithin(50000000, histogram.getPercentile(50));
+        assertWithin(99000000, histogram.getPercentile(99));
+        assertWithin(99900000, histogram.getPercentile(99.9));
+        Assert.assertEquals(100000000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testHugeValues() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-1);
+        Assert.assertEquals(2, histogram.getCount());
+        Assert.assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getMax());
+    }
+
+    private void assertWithin(long expected, long actual) {
+        Assert.assertTrue("Expected " + expected + " but was " + actual, actual >= expected && actual <= expected * 1.07);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+* JBoss, Home of Professional Open Source.
+* Copyright 2006, Red Hat Middleware LLC, and individual contributors
+* as indicated by the @author tags. See the copyright.txt file in the
+* distribution for a full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.as.remote.jmx.test;
+
+import java.lang.reflect.Method;
+
+import org.jboss.as.remote.jmx.common.MethodInvoker;
+import org.jboss.as.remote.jmx.common.MethodUtil;
+
+/**
+ * Compares the cost of the ways of dispatching a bean invocation. Not run as part of the tests, run
+ * {@code main()} with the test classpath, optionally passing the number of iterations per round.
+ * <p/>
+ * The target and the arguments are read from non-final fields, and the arguments change with every iteration, so
+ * that the JIT cannot hoist the call out of the loop or fold it into a constant; every result is added to the total.
+ * <p/>
+ * The {@link MethodInvoker} is currently a {@code ReflectiveMethodInvoker}, which only suppresses the access checks
+ * up front and checks the argument count. Its results are expected to be the same as those of an accessible
+ * {@code Method.invoke}: it is no faster, and it is kept as the place where a faster invoker can be plugged in
+ * once the code no longer has to run on Java 6.
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class MethodInvokerBenchmark {
+
+    private static final int ROUNDS = 10;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ARGUMENT_SETS = 1024;
+
+    private static volatile long sink;
+    private static Target target = new Target();
+    private static Object[][] params;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        params = new Object[ARGUMENT_SETS][];
+        for (int i = 0 ; i < ARGUMENT_SETS ; i++) {
+            params[i] = new Object[] {Integer.valueOf(i), Integer.valueOf(i * 31)};
+        }
+
+        final Method method = Target.class.getMethod("add", Integer.TYPE, Integer.TYPE);
+        final Method accessible = Target.class.getMethod("add", Integer.TYPE, Integer.TYPE);
+        accessible.setAccessible(true);
+        final MethodInvoker invoker = MethodUtil.createInvoker(Target.class.getMethod("add", Integer.TYPE, Integer.TYPE));
+
+        Benchmark[] benchmarks = new Benchmark[] {
+                new Benchmark("direct call") {
+                    long run(int iterations) {
+                        long total = 0;
+                        for (int i = 0 ; i < iterations ; i++) {
+                            Object[] args = params[i & (ARGUMENT_SETS - 1)];
+                            total += target.add((Integer)args[0], (Integer)args[1]);
+                        }
+                        return total;
+                    }
+                },
+                new Benchmark("Method.invoke") {
+                    long run(int iterations) throws Exception {
+                        long total = 0;
+                        for (int i = 0 ; i < iterations ; i++) {
+                            total += (Integer)method.invoke(target, params[i & (ARGUMENT_SETS - 1)]);
+                        }
+                        return total;
+                    }
+                },
+                new Benchmark("Method.invoke, accessible") {
+                    long run(int iterations) throws Exception {
+                        long total = 0;
+                        for (int i = 0 ; i < iterations ; i++) {
+                            total += (Integer)accessible.invoke(target, params[i & (ARGUMENT_SETS - 1)]);
+                        }
+                        return total;
+                    }
+                },
+                new Benchmark("MethodInvoker") {
+                    long run(int iterations) throws Exception {
+                        long total = 0;
+                        for (int i = 0 ; i < iterations ; i++) {
+                            total += (Integer)invoker.invoke(target, params[i & (ARGUMENT_SETS - 1)]);
+                        }
+                        return total;
+                    }
+                }
+        };
+        for (Benchmark benchmark : benchmarks) {
+            for (int i = 0 ; i < WARMUP_ROUNDS ; i++) {
+                sink += benchmark.run(iterations);
+            }
+            long best = Long.MAX_VALUE;
+            for (int i = 0 ; i < ROUNDS ; i++) {
+                long start = System.nanoTime();
+                sink += benchmark.run(iterations);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.println(String.format("%-30s %8.2f ns/op", benchmark.name, (double)best / iterations));
+        }
+    }
+
+    private abstract static class Benchmark {
+        final String name;
+
+        Benchmark(String name) {
+            this.name = name;
+        }
+
+        abstract long run(int iterations) throws Exception;
+    }
+
+    public static class Target {
+        public int add(int a, int b) {
+            return a + b;
+        }
+    }
+}
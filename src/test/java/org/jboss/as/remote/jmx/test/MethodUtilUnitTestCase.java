@@ -22,10 +22,12 @@
 package org.jboss.as.remote.jmx.test;
 
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 
 import junit.framework.Assert;
 
 import org.jboss.as.remote.jmx.common.DeploymentReflectionIndex;
+import org.jboss.as.remote.jmx.common.MethodTable;
 import org.jboss.as.remote.jmx.common.MethodUtil;
 import org.junit.Test;
 
@@ -73,12 +75,86 @@ public class MethodUtilUnitTestCase {
         doTest("arrayPrimitiveWrappersMethod");
     }
 
+    @Test
+    public void testOverloadedMethod() throws Exception {
+        Assert.assertEquals(getClass().getMethod("overloadedMethod", String.class),
+                MethodUtil.getMethod(index, getClass(), Void.TYPE.getName(), "overloadedMethod", new String[] {String.class.getName()}));
+        Assert.assertEquals(getClass().getMethod("overloadedMethod", Integer.TYPE),
+                MethodUtil.getMethod(index, getClass(), Integer.TYPE.getName(), "overloadedMethod", new String[] {Integer.TYPE.getName()}));
+        Assert.assertNull(MethodUtil.getMethod(index, getClass(), Void.TYPE.getName(), "overloadedMethod", new String[] {Integer.TYPE.getName()}));
+        Assert.assertNull(MethodUtil.getMethod(index, getClass(), Void.TYPE.getName(), "overloadedMethod", new String[0]));
+        Assert.assertNull(MethodUtil.getMethod(index, getClass(), Void.TYPE.getName(), "noSuchMethod", new String[0]));
+    }
+
+    @Test
+    public void testMethodTable() throws Exception {
+        MethodTable table = MethodTable.create(index, this.getClass());
+        String[] keys = table.getKeys();
+        Assert.assertTrue(keys.length > 0);
+        for (int i = 0 ; i < keys.length ; i++) {
+            Assert.assertEquals(keys[i], MethodUtil.getMethodKey(table.getMethod(i)));
+            Assert.assertTrue(table.isMethod(i, MethodUtil.getSignatureHash(table.getMethod(i))));
+            //An id pointing to a different method than the client meant must be rejected
+            Assert.assertFalse(table.isMethod(i, MethodUtil.getSignatureHash(table.getMethod((i + 1) % keys.length))) && keys.length > 1);
+        }
+        Assert.assertFalse(table.isMethod(keys.length, MethodUtil.getSignatureHash(table.getMethod(0))));
+        Assert.assertFalse(table.isMethod(-1, MethodUtil.getSignatureHash(table.getMethod(0))));
+        for (Method m : this.getClass().getDeclaredMethods()) {
+            boolean found = false;
+            for (String key : keys) {
+                found |= key.equals(MethodUtil.getMethodKey(m));
+            }
+            Assert.assertEquals(m.getName(), Modifier.isPublic(m.getModifiers()), found);
+        }
+        try {
+            table.getMethod(keys.length);
+            Assert.fail("Should not have found method");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testMethodIdBySignature() throws Exception {
+        MethodTable table = MethodTable.create(index, this.getClass());
+        for (int i = 0 ; i < table.getKeys().length ; i++) {
+            Method m = table.getMethod(i);
+            String returnType = m.getReturnType().getName();
+            String[] sig = MethodUtil.getSignature(m);
+            Assert.assertEquals(MethodUtil.getSignatureHash(m), MethodUtil.getSignatureHash(returnType, m.getName(), sig));
+            Assert.assertEquals(i, table.getMethodId(MethodUtil.getSignatureHash(returnType, m.getName(), sig), returnType, m.getName(), sig));
+        }
+        String[] sig = new String[] {Integer.TYPE.getName()};
+        Assert.assertEquals(-1, table.getMethodId(MethodUtil.getSignatureHash(Void.TYPE.getName(), "overloadedMethod", sig), Void.TYPE.getName(), "overloadedMethod", sig));
+        //A hash which does not belong to the signature must not find a different method
+        long hash = MethodUtil.getSignatureHash(Integer.TYPE.getName(), "overloadedMethod", sig);
+        Assert.assertEquals(-1, table.getMethodId(hash, Void.TYPE.getName(), "overloadedMethod", sig));
+    }
+
+    @Test
+    public void testMatchesMethodKey() throws Exception {
+        String[] sig = new String[] {"int", "java.lang.String"};
+        String key = MethodUtil.getMethodKey("void", "test", sig);
+        Assert.assertTrue(MethodUtil.matchesMethodKey(key, "void", "test", sig));
+        Assert.assertFalse(MethodUtil.matchesMethodKey(key, "int", "test", sig));
+        Assert.assertFalse(MethodUtil.matchesMethodKey(key, "void", "tes", sig));
+        Assert.assertFalse(MethodUtil.matchesMethodKey(key, "void", "test", new String[] {"int"}));
+        Assert.assertFalse(MethodUtil.matchesMethodKey(key, "void", "test", new String[] {"int", "java.lang.String", "int"}));
+        Assert.assertTrue(MethodUtil.matchesMethodKey(MethodUtil.getMethodKey("void", "test", new String[0]), "void", "test", null));
+    }
+
     public void noArgsMethod() {
     }
 
     public void simpleMethod(String s){
     }
 
+    public void overloadedMethod(String s){
+    }
+
+    public int overloadedMethod(int i){
+        return i;
+    }
+
     public void primitivesMethod(int i, boolean bool, byte b, short s, double d, long l, float f) {
     }
 
@@ -0,0 +1,124 @@
+/*
+* JBoss, Home of Professional Open Source.
+* Copyright 2006, Red Hat Middleware LLC, and individual contributors
+* as indicated by the @author tags. See the copyright.txt file in the
+* distribution for a full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.as.remote.jmx.test;
+
+import java.io.NotSerializableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.jboss.as.remote.jmx.mbean.PassivationStore;
+import org.junit.Test;
+
+/**
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class PassivationStoreUnitTestCase {
+
+    @Test
+    public void testWriteReadFree() throws Exception {
+        PassivationStore store = PassivationStore.create(null, 64 * 1024);
+        try {
+            Map<String, Integer> value = new HashMap<String, Integer>();
+            value.put("one", 1);
+            value.put("two", 2);
+            PassivationStore.Slot slot = store.write(value);
+            Assert.assertNotNull(slot);
+            Assert.assertEquals(1, store.size());
+            Assert.assertTrue(store.getUsedBytes() >= slot.getLength());
+
+            Assert.assertEquals(value, store.read(slot, getClass().getClassLoader()));
+            //Reading does not free the slot
+            Assert.assertEquals(value, store.read(slot, null));
+
+            store.free(slot);
+            Assert.assertEquals(0, store.size());
+            Assert.assertEquals(0, store.getUsedBytes());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testFullStoreAndReuse() throws Exception {
+        PassivationStore store = PassivationStore.create(null, 16 * PassivationStore.BLOCK_SIZE);
+        try {
+            //Each takes more than one block
+            byte[] value = new byte[PassivationStore.BLOCK_SIZE];
+            List<PassivationStore.Slot> slots = new ArrayList<PassivationStore.Slot>();
+            PassivationStore.Slot slot = store.write(value);
+            while (slot != null) {
+                slots.add(slot);
+                slot = store.write(value);
+            }
+            Assert.assertEquals(8, slots.size());
+            Assert.assertEquals(store.getCapacity(), store.getUsedBytes());
+
+            //Freeing two neighbours makes room for something twice as big
+            store.free(slots.get(2));
+            store.free(slots.get(3));
+            Assert.assertNull(store.write(new byte[4 * PassivationStore.BLOCK_SIZE]));
+            byte[] bigger = new byte[2 * PassivationStore.BLOCK_SIZE];
+            Arrays.fill(bigger, (byte)7);
+            slot = store.write(bigger);
+            Assert.assertNotNull(slot);
+            Assert.assertTrue(Arrays.equals(bigger, (byte[])store.read(slot, null)));
+            Assert.assertTrue(Arrays.equals(value, (byte[])store.read(slots.get(4), null)));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testNotSerializable() throws Exception {
+        PassivationStore store = PassivationStore.create(null, 64 * 1024);
+        try {
+            store.write(new Object());
+            Assert.fail("Should not have been able to write a non-serializable object");
+        } catch (NotSerializableException expected) {
+        } finally {
+            store.close();
+        }
+        Assert.assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testClosed() throws Exception {
+        PassivationStore store = PassivationStore.create(null, 64 * 1024);
+        PassivationStore.Slot slot = store.write("test");
+        store.close();
+        try {
+            store.read(slot, null);
+            Assert.fail("Should not have been able to read from a closed store");
+        } catch (IllegalStateException expected) {
+        }
+        //Freeing after closing is harmless
+        store.free(slot);
+        Assert.assertEquals(0, store.size());
+    }
+}
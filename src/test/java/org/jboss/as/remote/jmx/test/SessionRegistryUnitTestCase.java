@@ -0,0 +1,129 @@
+/*
+* JBoss, Home of Professional Open Source.
+* Copyright 2006, Red Hat Middleware LLC, and individual contributors
+* as indicated by the @author tags. See the copyright.txt file in the
+* distribution for a full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.as.remote.jmx.test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.jboss.as.remote.jmx.common.SessionIdGenerator;
+import org.jboss.as.remote.jmx.common.SessionRegistry;
+import org.junit.Test;
+
+/**
+ *
+ * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
+ * @version $Revision: 1.1 $
+ */
+public class SessionRegistryUnitTestCase {
+
+    @Test
+    public void testIdsAreUnique() throws Exception {
+        SessionIdGenerator generator = new SessionIdGenerator();
+        Set<Long> ids = new HashSet<Long>();
+        for (int i = 0 ; i < 100000 ; i++) {
+            long id = generator.nextId();
+            Assert.assertTrue(id != 0);
+            Assert.assertTrue(ids.add(id));
+        }
+    }
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        SessionRegistry<String> registry = new SessionRegistry<String>(4);
+        Map<Long, String> expected = new HashMap<Long, String>();
+        Random random = new Random(1234);
+        for (int i = 0 ; i < 20000 ; i++) {
+            //Use a small key space so that we get plenty of replacements and removals
+            long id = random.nextInt(5000);
+            String value = String.valueOf(i);
+            switch (random.nextInt(3)) {
+                case 0:
+                    Assert.assertEquals(expected.put(id, value), registry.put(id, value));
+                    break;
+                case 1:
+                    Assert.assertEquals(expected.remove(id), registry.remove(id));
+                    break;
+                default:
+                    Assert.assertEquals(expected.get(id), registry.get(id));
+            }
+            Assert.assertEquals(expected.size(), registry.size());
+        }
+        for (Map.Entry<Long, String> entry : expected.entrySet()) {
+            Assert.assertEquals(entry.getValue(), registry.get(entry.getKey()));
+        }
+        registry.clear();
+        Assert.assertEquals(0, registry.size());
+        for (Long id : expected.keySet()) {
+            Assert.assertNull(registry.get(id));
+        }
+    }
+
+    @Test
+    public void testRemoveExpected() throws Exception {
+        SessionRegistry<String> registry = new SessionRegistry<String>();
+        registry.put(1, "a");
+        Assert.assertFalse(registry.remove(1, "b"));
+        Assert.assertEquals("a", registry.get(1));
+        Assert.assertTrue(registry.remove(1, "a"));
+        Assert.assertNull(registry.get(1));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final SessionRegistry<Object> registry = new SessionRegistry<Object>();
+        final SessionIdGenerator generator = new SessionIdGenerator();
+        final int threadCount = 8;
+        final CountDownLatch latch = new CountDownLatch(threadCount);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (int t = 0 ; t < threadCount ; t++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int i = 0 ; i < 10000 ; i++) {
+                            Object session = new Object();
+                            long id = generator.nextId();
+                            Assert.assertNull(registry.put(id, session));
+                            Assert.assertSame(session, registry.get(id));
+                            if (i % 2 == 0) {
+                                Assert.assertSame(session, registry.remove(id));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+        }
+        latch.await();
+        Assert.assertNull(failure.get());
+        Assert.assertEquals(threadCount * 5000, registry.size());
+    }
+}
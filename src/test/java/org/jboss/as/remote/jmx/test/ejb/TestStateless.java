@@ -21,6 +21,10 @@
 */
 package org.jboss.as.remote.jmx.test.ejb;
 
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+
 import javax.ejb.Local;
 
 /**
@@ -32,4 +36,12 @@ import javax.ejb.Local;
 public interface TestStateless {
 
     int test(boolean b);
+
+    byte[] bytes(int length);
+
+    InputStream stream(int length);
+
+    Iterator<Integer> iterator(int count);
+
+    List<Integer> list(int count);
 }
@@ -21,6 +21,12 @@
 */
 package org.jboss.as.remote.jmx.test.ejb;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
 import javax.ejb.Stateless;
 
 /**
@@ -35,4 +41,28 @@ public class TestStatelessBean implements TestStateless {
         return b ? 1 : 0;
     }
 
+    public byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0 ; i < length ; i++) {
+            bytes[i] = (byte)i;
+        }
+        return bytes;
+    }
+
+    public InputStream stream(int length) {
+        return new ByteArrayInputStream(bytes(length));
+    }
+
+    public Iterator<Integer> iterator(int count) {
+        return list(count).iterator();
+    }
+
+    public List<Integer> list(int count) {
+        List<Integer> list = new ArrayList<Integer>(count);
+        for (int i = 0 ; i < count ; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
 }